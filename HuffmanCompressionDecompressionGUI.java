@@ -2,43 +2,65 @@ import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
-// Node class represents a node in the Huffman tree
-class Node {
-    char data; // The character stored in the node (only for leaf nodes)
-    int frequency; // Frequency of the character or sum of frequencies for internal nodes
-    Node left, right; // Left and right children in the Huffman tree
-
-    // Constructor for leaf nodes (nodes containing actual characters)
-    Node(char data, int frequency) {
-        this.data = data; // Assign the character
-        this.frequency = frequency; // Assign the frequency
-        left = right = null;
-    }
-
-    // Constructor for internal nodes (no character, only combined frequency)
-    Node(int frequency) {
-        this.frequency = frequency; // Assign the combined frequency
-        left = right = null;
-    }
-}
+import huffman.HuffmanArchive;
+import huffman.HuffmanCodec;
+import huffman.HuffmanListener;
+import huffman.HuffmanMetrics;
 
 public class HuffmanCompressionDecompressionGUI extends JFrame {
 
-    private static final int MAX_CHAR = 65536; // Unicode range
-    private int[] frequencyTable = new int[MAX_CHAR]; // Store frequencies
-    private String[] huffmanCodes = new String[MAX_CHAR];
-    private Node[] heap = new Node[MAX_CHAR]; // Min-heap array
-    private int heapSize = 0;
-    private int charCount = 0; // Number of unique characters
-    private int count = 0;
     private JTextArea outputTextArea;
+    private JComboBox<String> formatComboBox;
+    private JButton compressButton;
+    private JButton compressFolderButton;
+    private JButton decompressButton;
+    private JButton cancelButton;
+    private JProgressBar progressBar;
+
+    // Live metrics labels: one per phase, then throughput, peak heap, elapsed time
+    // and the size cost of the code length limit
+    private final JLabel[] phaseLabels = new JLabel[HuffmanListener.Phase.values().length];
+    private final JLabel throughputLabel = new JLabel("-");
+    private final JLabel peakHeapLabel = new JLabel("-");
+    private final JLabel elapsedLabel = new JLabel("-");
+    private final JLabel lengthLimitLabel = new JLabel("-");
+
+    // Output formats offered in the format selector
+    private static final String FORMAT_BINARY_BLOCKS = "Binary (one pass, blocks)";
+    private static final String FORMAT_TEXT_BLOCKS = "Text (one pass, blocks)";
+    private static final String FORMAT_TEXT_SINGLE = "Text (two passes, single stream)";
+
+    // Worker threads for the block-parallel format
+    private final ForkJoinPool blockPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // Metrics of the current job, also published over JMX as huffman:type=HuffmanMetrics,name="gui"
+    private final HuffmanMetrics metrics = new HuffmanMetrics();
+
+    // The frame only collects file names and shows results; all coding is done here
+    private final HuffmanCodec codec = new HuffmanCodec(HuffmanCodec.DEFAULT_BLOCK_SIZE, blockPool, metrics);
+
+    // Packs folders into indexed archives, compressing several files at once
+    private final HuffmanArchive archiver = new HuffmanArchive(codec, Runtime.getRuntime().availableProcessors());
+
+    // Refreshes the progress bar and metrics panel while a job runs
+    private final Timer metricsTimer = new Timer(200, e -> updateMetrics());
+
+    // Job running in the background, null when idle
+    private SwingWorker<String, Void> currentJob;
 
     public HuffmanCompressionDecompressionGUI() {
         // Set up the GUI window title and dimensions
         setTitle("Huffman Compression/Decompression Tool");
-        setSize(600, 450);
+        setSize(720, 600);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // Close the app when window is closed
         setLocationRelativeTo(null); // Center the window on the screen
 
@@ -58,13 +80,60 @@ public class HuffmanCompressionDecompressionGUI extends JFrame {
         buttonPanel.setBackground(new Color(240, 248, 255)); // Match background color
 
         // Create styled buttons for compression and decompression
-        JButton compressButton = createStyledButton("Compress File", new Color(70, 130, 180)); // Steel blue
-        JButton decompressButton = createStyledButton("Decompress File", new Color(60, 179, 113)); // Medium sea green
+        compressButton = createStyledButton("Compress File", new Color(70, 130, 180)); // Steel blue
+        compressFolderButton = createStyledButton("Compress Folder", new Color(100, 149, 237)); // Cornflower blue
+        decompressButton = createStyledButton("Decompress File", new Color(60, 179, 113)); // Medium sea green
 
         // Add the buttons to the button panel
         buttonPanel.add(compressButton);
+        buttonPanel.add(compressFolderButton);
         buttonPanel.add(decompressButton);
 
+        // Format selector: raw bytes or characters, one pass over parallel blocks or
+        // two passes into one stream
+        formatComboBox = new JComboBox<>(new String[] { FORMAT_BINARY_BLOCKS, FORMAT_TEXT_BLOCKS, FORMAT_TEXT_SINGLE });
+        formatComboBox.setFont(new Font("Arial", Font.PLAIN, 13));
+        buttonPanel.add(formatComboBox);
+
+        // Progress bar driven by the bytes processed, with a button to cancel the job
+        JPanel progressPanel = new JPanel(new BorderLayout(10, 0));
+        progressPanel.setBackground(new Color(240, 248, 255)); // Match background color
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(5, 20, 5, 20));
+        progressBar = new JProgressBar(0, 1000);
+        progressBar.setStringPainted(true);
+        progressBar.setString("Idle");
+        cancelButton = new JButton("Cancel");
+        cancelButton.setEnabled(false); // Only enabled while a job runs
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        progressPanel.add(cancelButton, BorderLayout.EAST);
+
+        // Metrics panel: time spent in each phase (summed over worker threads),
+        // throughput and peak heap of the current or last job
+        JPanel metricsPanel = new JPanel(new GridLayout(0, 4, 10, 2));
+        metricsPanel.setBackground(new Color(240, 248, 255)); // Match background color
+        metricsPanel.setBorder(BorderFactory.createCompoundBorder(
+                BorderFactory.createEmptyBorder(0, 20, 5, 20),
+                BorderFactory.createTitledBorder("Metrics")));
+        for (HuffmanListener.Phase phase : HuffmanListener.Phase.values()) {
+            phaseLabels[phase.ordinal()] = new JLabel("-");
+            metricsPanel.add(new JLabel(phase.displayName() + ":"));
+            metricsPanel.add(phaseLabels[phase.ordinal()]);
+        }
+        metricsPanel.add(new JLabel("Throughput:"));
+        metricsPanel.add(throughputLabel);
+        metricsPanel.add(new JLabel("Peak heap:"));
+        metricsPanel.add(peakHeapLabel);
+        metricsPanel.add(new JLabel("Elapsed:"));
+        metricsPanel.add(elapsedLabel);
+        metricsPanel.add(new JLabel("Length limit cost:"));
+        metricsPanel.add(lengthLimitLabel);
+
+        // Stack the buttons, the progress bar and the metrics in the middle
+        JPanel centerPanel = new JPanel(new BorderLayout());
+        centerPanel.add(buttonPanel, BorderLayout.NORTH);
+        centerPanel.add(progressPanel, BorderLayout.CENTER);
+        centerPanel.add(metricsPanel, BorderLayout.SOUTH);
+
         // Output text area to display process logs and results
         outputTextArea = new JTextArea(12, 40);
         outputTextArea.setEditable(false); // Make it read-only
@@ -77,15 +146,24 @@ public class HuffmanCompressionDecompressionGUI extends JFrame {
         JScrollPane scrollPane = new JScrollPane(outputTextArea);
         mainPanel.add(scrollPane, BorderLayout.SOUTH); // Add scrollable text area at the bottom
 
-        // Add the button panel to the center region of the layout
-        mainPanel.add(buttonPanel, BorderLayout.CENTER);
+        // Add the button, progress and metrics panels to the center region of the layout
+        mainPanel.add(centerPanel, BorderLayout.CENTER);
 
         // Add the fully assembled main panel to the frame
         add(mainPanel);
 
         // Attach event listeners to the buttons to trigger compression or decompression
         compressButton.addActionListener(e -> handleCompressButtonClick());
+        compressFolderButton.addActionListener(e -> handleCompressFolderButtonClick());
         decompressButton.addActionListener(e -> handleDecompressButtonClick());
+        cancelButton.addActionListener(e -> handleCancelButtonClick());
+
+        // Publish the metrics so they can be read with JConsole or any JMX client
+        try {
+            metrics.register("gui");
+        } catch (IOException ex) {
+            outputTextArea.setText("Metrics are not available over JMX: " + ex.getMessage());
+        }
     }
 
     // Method to create a styled JButton with custom font, color, and size
@@ -96,173 +174,19 @@ public class HuffmanCompressionDecompressionGUI extends JFrame {
         button.setBackground(bgColor);
         button.setFocusPainted(false); // Remove default focus highlight
         button.setBorder(BorderFactory.createRaisedBevelBorder());
-        button.setPreferredSize(new Dimension(200, 40));
+        button.setPreferredSize(new Dimension(160, 40));
         return button;
     }
 
-    // Method to read a file and build the frequency table of characters
-    private void buildFrequencyTable(String filePath) throws IOException {
-        // Use BufferedReader for efficient character reading
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath), 8192)) {
-            int ch;
-            while ((ch = br.read()) != -1) { // Read each character
-                if (frequencyTable[ch] == 0) {
-                    charCount++; // If it's the first occurrence, count it as unique
-                }
-                frequencyTable[ch]++; // Increment frequency count
-            }
-        }
-    }
-
-    // Method to insert a node into the min-heap while maintaining heap order
-    private void insertHeap(Node node) {
-        heap[heapSize] = node; // Place node at the end of the heap
-        int currentIndex = heapSize++; // Save current index and increase heap size
-
-        // Bubble up the node until heap property is restored
-        while (currentIndex > 0) {
-            int parentIndex = (currentIndex - 1) / 2;
-
-            // If the current node's frequency is greater than or equal to the parent's
-            if (heap[currentIndex].frequency >= heap[parentIndex].frequency) {
-                break;
-            }
-
-            // Otherwise, swap with parent and continue bubbling up
-            swap(currentIndex, parentIndex);
-            currentIndex = parentIndex;
+    // Maps a format selector entry to the codec's format
+    private static HuffmanCodec.Format toFormat(String format) {
+        if (FORMAT_TEXT_BLOCKS.equals(format)) {
+            return HuffmanCodec.Format.TEXT_BLOCKS;
         }
-    }
-
-    // Method to extract (remove and return) the node with the minimum frequency
-    // from the heap
-    private Node extractMin() {
-        Node minNode = heap[0]; // Root of the heap is the minimum element
-        heap[0] = heap[--heapSize]; // Replace root with last node and reduce heap size
-        heapify(0); // Restore heap property from the root downward
-        return minNode;
-    }
-
-    // Restores the min-heap property starting from a given index.
-    private void heapify(int index) {
-        int smallest = index;
-        int leftChild = 2 * index + 1; // Index of left child
-        int rightChild = 2 * index + 2; // Index of right child
-
-        // Check if left child is smaller than the current smallest
-        if (leftChild < heapSize && heap[leftChild].frequency < heap[smallest].frequency) {
-            smallest = leftChild;
-        }
-
-        // Check if right child is smaller than the current smallest
-        if (rightChild < heapSize && heap[rightChild].frequency < heap[smallest].frequency) {
-            smallest = rightChild;
-        }
-
-        // If a smaller child is found, swap and continue heapifying
-        if (smallest != index) {
-            swap(smallest, index);
-            heapify(smallest);
-        }
-    }
-
-    // Swaps two nodes in the heap based on their indices
-    private void swap(int i, int j) {
-        Node temp = heap[i];
-        heap[i] = heap[j];
-        heap[j] = temp;
-    }
-
-    // Builds the Huffman Tree using the frequency table and min-heap
-    private Node buildHuffmanTree() {
-        // Insert all characters with non-zero frequency into the min-heap
-        for (int i = 0; i < MAX_CHAR; i++) {
-            if (frequencyTable[i] > 0) {
-                insertHeap(new Node((char) i, frequencyTable[i]));
-            }
-        }
-
-        // Repeat until only one node remains (the root of the tree)
-        while (heapSize > 1) {
-            // Extract the two nodes with the smallest frequencies
-            Node node1 = extractMin();
-            Node node2 = extractMin();
-
-            // Create a new internal node with combined frequency
-            Node newNode = new Node(node1.frequency + node2.frequency);
-            newNode.left = node1; // Left child
-            newNode.right = node2; // Right child
-
-            // Insert the new internal node back into the heap
-            insertHeap(newNode);
-        }
-
-        return heap[0]; // Return the root of the final Huffman Tree
-    }
-
-    // Recursively generates Huffman codes by traversing the Huffman Tree
-    private void generateHuffmanCodes(Node node, String code) {
-        // Base case: if it's a leaf node, assign the code to the character
-        if (node.left == null && node.right == null) {
-            huffmanCodes[node.data] = code;
-            return;
-        }
-
-        // Traverse left child and append '0' to the code
-        generateHuffmanCodes(node.left, code + "0");
-
-        // Traverse right child and append '1' to the code
-        generateHuffmanCodes(node.right, code + "1");
-    }
-
-    // Compresses the input file using Huffman encoding and writes to the output
-    // binary file
-    private void compressFile(String inputFilePath, String outputFilePath) throws IOException {
-        // Open input file for reading and output file for writing in buffered mode
-        try (BufferedReader br = new BufferedReader(new FileReader(inputFilePath), 8192);
-                DataOutputStream dos = new DataOutputStream(
-                        new BufferedOutputStream(new FileOutputStream(outputFilePath), 8192))) {
-
-            // Write the number of unique characters first (needed for decompression)
-            dos.writeInt(charCount);
-
-            // Write each character and its frequency to the output file
-            for (int i = 0; i < MAX_CHAR; i++) {
-                if (frequencyTable[i] > 0) {
-                    dos.writeChar(i); // Write the character
-                    dos.writeInt(frequencyTable[i]); // Write its frequency
-                }
-            }
-
-            int bitBuffer = 0; // Buffer to hold bits before writing as a byte
-            int bitCount = 0; // Number of bits currently in buffer
-            int ch;
-
-            // Read each character from input and encode using Huffman codes
-            while ((ch = br.read()) != -1) {
-                String code = huffmanCodes[ch]; // Get Huffman code for the character
-                for (char bit : code.toCharArray()) {
-                    bitBuffer <<= 1; // Left-shift to make room for the next bit
-                    if (bit == '1') {
-                        bitBuffer |= 1; // Set the least significant bit to 1 if needed
-                    }
-                    bitCount++; // Increase count of bits in buffer
-
-                    // When buffer reaches 8 bits (1 byte), write it to output
-                    if (bitCount == 8) {
-                        dos.write(bitBuffer); // Write one byte
-                        bitBuffer = 0; // Reset buffer
-                        bitCount = 0; // Reset bit counter
-                    }
-                }
-            }
-
-            // If there are remaining bits that don’t fill a complete byte
-            if (bitCount > 0) {
-                bitBuffer <<= (8 - bitCount); // Left-shift remaining bits to fill the byte
-                dos.write(bitBuffer); // Write the final partial byte
-            }
+        if (FORMAT_TEXT_SINGLE.equals(format)) {
+            return HuffmanCodec.Format.TEXT_SINGLE_STREAM;
         }
+        return HuffmanCodec.Format.BINARY_BLOCKS;
     }
 
     // Returns the size of a given file in bytes
@@ -271,183 +195,285 @@ public class HuffmanCompressionDecompressionGUI extends JFrame {
         return file.length();
     }
 
+    // Formats a duration in milliseconds as minutes, seconds and milliseconds
+    private static String formatTime(long totalTimeInMillis) {
+        long minutes = totalTimeInMillis / 60000;
+        long seconds = (totalTimeInMillis % 60000) / 1000;
+        long millis = totalTimeInMillis % 1000;
+        return String.format("%d min %d sec %d ms", minutes, seconds, millis);
+    }
+
     private void handleCompressButtonClick() {
+        String format = (String) formatComboBox.getSelectedItem();
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt"));
+        if (!FORMAT_BINARY_BLOCKS.equals(format)) {
+            fileChooser.setFileFilter(new FileNameExtensionFilter("Text Files", "txt"));
+        }
         int result = fileChooser.showOpenDialog(this);
 
         if (result == JFileChooser.APPROVE_OPTION) {
             File inputFile = fileChooser.getSelectedFile();
+            String inputFilePath = inputFile.getAbsolutePath();
+            String outputFilePath = inputFile.getParent() + "/compressed.bin";
 
-            try {
-                String inputFilePath = inputFile.getAbsolutePath();
-                String outputFilePath = inputFile.getParent() + "/compressed.bin";
-
-                // Step 1: Build frequency table
-                buildFrequencyTable(inputFilePath);
-
-                // Step 2: Build Huffman Tree
-                Node root = buildHuffmanTree();
-                if (root == null) {
-                    outputTextArea.setText("The input file is empty. No compression needed.");
-                    return; // Exit
-                }
-
-                // Step 3: Generate Huffman codes
-                generateHuffmanCodes(root, "");
+            if (inputFile.length() == 0) {
+                outputTextArea.setText("The input file is empty. No compression needed.");
+                return; // Exit
+            }
 
-                // Step 4: Compress the file
+            outputTextArea.setText("Compressing " + inputFile.getName() + "...\n");
+            runJob(inputFile.length(), new File(outputFilePath), () -> {
+                // Step 1: Compress the file in the selected format
                 long startTime = System.nanoTime(); // Start timing compression
-                compressFile(inputFilePath, outputFilePath);
+                codec.compressFile(inputFile.toPath(), new File(outputFilePath).toPath(), toFormat(format));
                 long endTime = System.nanoTime(); // End timing compression
-                double compressionTimeInMillis = (endTime - startTime) / 1e6;
+                long totalTimeInMillis = (endTime - startTime) / 1_000_000;
 
-                // Time conversion into minutes, seconds, and milliseconds
-                long totalTimeInMillis = (long) compressionTimeInMillis;
-                long minutes = totalTimeInMillis / 60000;
-                long seconds = (totalTimeInMillis % 60000) / 1000;
-                long millis = totalTimeInMillis % 1000;
-
-                // Step 5: Show file sizes and compression ratio
+                // Step 2: Show file sizes and compression ratio
                 long originalSize = getFileSize(inputFilePath);
                 long compressedSize = getFileSize(outputFilePath);
                 double compressionRatio = (double) (compressedSize) / originalSize * 100; // Percentage
 
-                outputTextArea.setText(String.format("Original File Size: %d bytes\n", originalSize));
-                outputTextArea.append(String.format("Compressed File Size: %d bytes\n", compressedSize));
-                outputTextArea.append(String.format("Compression Ratio: %.2f%%\n", compressionRatio));
-                outputTextArea.append(
-                        String.format("Time Taken to Compress: %d min %d sec %d ms\n", minutes, seconds, millis));
+                return String.format("Original File Size: %d bytes\n", originalSize)
+                        + String.format("Compressed File Size: %d bytes\n", compressedSize)
+                        + String.format("Compression Ratio: %.2f%%\n", compressionRatio)
+                        + "Time Taken to Compress: " + formatTime(totalTimeInMillis) + "\n";
+            });
+        }
+    }
+
+    private void handleCompressFolderButtonClick() {
+        JFileChooser fileChooser = new JFileChooser();
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        int result = fileChooser.showOpenDialog(this);
+
+        if (result == JFileChooser.APPROVE_OPTION) {
+            File inputFolder = fileChooser.getSelectedFile();
+            File archiveFile = new File(inputFolder.getParentFile(), inputFolder.getName() + ".huf");
 
+            // Step 1: Find the files to archive, so progress can be shown against their total size
+            long totalSize = 0;
+            int fileCount;
+            try {
+                List<Path> files = HuffmanArchive.listFiles(inputFolder.toPath());
+                for (Path file : files) {
+                    totalSize += Files.size(file);
+                }
+                fileCount = files.size();
             } catch (IOException ex) {
                 outputTextArea.setText("Error: " + ex.getMessage());
+                return;
+            }
+            if (fileCount == 0) {
+                outputTextArea.setText("The folder contains no files. No compression needed.");
+                return; // Exit
             }
+
+            outputTextArea.setText("Compressing " + fileCount + " files from " + inputFolder.getName() + "...\n");
+            long originalSize = totalSize;
+            runJob(totalSize, archiveFile, () -> {
+                // Step 2: Compress the files into one archive
+                long startTime = System.nanoTime(); // Start timing compression
+                int entries = archiver.create(inputFolder.toPath(), archiveFile.toPath()).size();
+                long endTime = System.nanoTime(); // End timing compression
+                long totalTimeInMillis = (endTime - startTime) / 1_000_000;
+
+                // Step 3: Show sizes and compression ratio
+                long compressedSize = archiveFile.length();
+                // Archive size as a percentage of the folder size
+                double compressionRatio = originalSize == 0 ? 0 : (double) (compressedSize) / originalSize * 100;
+
+                return String.format("Archive: %s (%d files)\n", archiveFile.getName(), entries)
+                        + String.format("Original Folder Size: %d bytes\n", originalSize)
+                        + String.format("Archive Size: %d bytes\n", compressedSize)
+                        + String.format("Compression Ratio: %.2f%%\n", compressionRatio)
+                        + "Time Taken to Compress: " + formatTime(totalTimeInMillis) + "\n";
+            });
         }
     }
 
     private void handleDecompressButtonClick() {
         JFileChooser fileChooser = new JFileChooser();
-        fileChooser.setFileFilter(new FileNameExtensionFilter("Compressed Files", "bin"));
+        fileChooser.setFileFilter(new FileNameExtensionFilter("Compressed Files", "bin", "huf"));
         int result = fileChooser.showOpenDialog(this);
 
         if (result == JFileChooser.APPROVE_OPTION) {
             File inputFile = fileChooser.getSelectedFile();
+            String compressedFilePath = inputFile.getAbsolutePath();
 
+            // Archives are extracted into a folder next to them
             try {
-                String compressedFilePath = inputFile.getAbsolutePath();
-                String decompressedFilePath = inputFile.getParent() + "/decompressed.txt";
+                if (HuffmanArchive.isArchive(inputFile.toPath())) {
+                    extractArchive(inputFile);
+                    return;
+                }
+            } catch (IOException ex) {
+                outputTextArea.setText("Error: " + ex.getMessage());
+                return;
+            }
+
+            HuffmanCodec.Format format;
+            try {
+                format = HuffmanCodec.detectFormat(inputFile.toPath());
+            } catch (IOException ex) {
+                outputTextArea.setText("Error: " + ex.getMessage());
+                return;
+            }
+            String decompressedName = format == HuffmanCodec.Format.BINARY_BLOCKS
+                    ? "decompressed.out" // Original file type is not recorded for raw bytes
+                    : "decompressed.txt";
+            String decompressedFilePath = inputFile.getParent() + "/" + decompressedName;
 
+            outputTextArea.setText("Decompressing " + inputFile.getName() + "...\n");
+            runJob(inputFile.length(), new File(decompressedFilePath), () -> {
                 // Step 1: Decompress the file
                 long startTime = System.nanoTime(); // Start timing decompression
-                decompressFile(compressedFilePath, decompressedFilePath);
+                codec.decompressFile(inputFile.toPath(), new File(decompressedFilePath).toPath());
                 long endTime = System.nanoTime(); // End timing decompression
-                double decompressionTimeInMillis = (endTime - startTime) / 1e6;
-
-                // Time conversion into minutes, seconds, and milliseconds
-                long totalTimeInMillis = (long) decompressionTimeInMillis;
-                long minutes = totalTimeInMillis / 60000;
-                long seconds = (totalTimeInMillis % 60000) / 1000;
-                long millis = totalTimeInMillis % 1000;
+                long totalTimeInMillis = (endTime - startTime) / 1_000_000;
 
                 // Step 2: Show file sizes
                 long compressedSize = getFileSize(compressedFilePath);
                 long decompressedSize = getFileSize(decompressedFilePath);
 
-                outputTextArea.setText(String.format("Compressed File Size: %d bytes\n", compressedSize));
-                outputTextArea.append(String.format("Decompressed File Size: %d bytes\n", decompressedSize));
-                outputTextArea.append(
-                        String.format("Time Taken to Decompress: %d min %d sec %d ms\n", minutes, seconds, millis));
+                return String.format("Compressed File Size: %d bytes\n", compressedSize)
+                        + String.format("Decompressed File Size: %d bytes\n", decompressedSize)
+                        + "Time Taken to Decompress: " + formatTime(totalTimeInMillis) + "\n";
+            });
+        }
+    }
 
-            } catch (IOException ex) {
-                outputTextArea.setText("Error: " + ex.getMessage());
+    // Extracts every file of an archive into <archive name>_extracted
+    private void extractArchive(File archiveFile) {
+        File targetFolder = new File(archiveFile.getParentFile(),
+                archiveFile.getName().replace('.', '_') + "_extracted");
+
+        outputTextArea.setText("Extracting " + archiveFile.getName() + "...\n");
+        runJob(archiveFile.length(), null, () -> {
+            // Step 1: Extract all entries
+            long startTime = System.nanoTime(); // Start timing extraction
+            List<HuffmanArchive.Entry> entries = archiver.extractAll(archiveFile.toPath(), targetFolder.toPath());
+            long endTime = System.nanoTime(); // End timing extraction
+            long totalTimeInMillis = (endTime - startTime) / 1_000_000;
+
+            // Step 2: Show sizes
+            long extractedSize = 0;
+            for (HuffmanArchive.Entry entry : entries) {
+                extractedSize += entry.originalSize();
             }
+
+            return String.format("Extracted %d files to %s\n", entries.size(), targetFolder.getName())
+                    + String.format("Archive Size: %d bytes\n", archiveFile.length())
+                    + String.format("Extracted Size: %d bytes\n", extractedSize)
+                    + "Time Taken to Extract: " + formatTime(totalTimeInMillis) + "\n";
+        });
+    }
+
+    // Interrupts the running job; the codec stops at its next block or buffer
+    private void handleCancelButtonClick() {
+        if (currentJob != null) {
+            cancelButton.setEnabled(false);
+            currentJob.cancel(true);
         }
     }
 
-    // Decompression logic (same as the provided code)
-    private void decompressFile(String inputFilePath, String outputFilePath) throws IOException {
-        // Decompression implementation (the existing code for decompression)
-        // You can reuse the decompression logic as it is from your original code.
-        try (DataInputStream dis = new DataInputStream(
-                new BufferedInputStream(new FileInputStream(inputFilePath), 8192));
-                BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))) {
-
-            // Step 1: Read the number of unique characters
-            int uniqueCharsCount = dis.readInt();
-
-            // Step 2: Rebuild the frequency table and create the Huffman Tree
-            int[] frequencyTable = new int[MAX_CHAR];
-            for (int i = 0; i < uniqueCharsCount; i++) {
-                char ch = dis.readChar();
-                int freq = dis.readInt();
-                frequencyTable[ch] = freq;
-                count += freq;
+    // Runs a job on a background worker so the window stays responsive. The job
+    // returns the summary to show; if it fails or is cancelled, its incomplete
+    // output file is deleted (a null output file is left to the job).
+    private void runJob(long totalBytes, File outputFile, Callable<String> job) {
+        metrics.start(totalBytes);
+        setRunning(true);
+
+        currentJob = new SwingWorker<String, Void>() {
+            // done() and the worker's exit, both counted on the event thread.
+            // A cancelled job is done before its worker has stopped, so the
+            // controls stay disabled until both have happened
+            private int pending = 2;
+
+            @Override
+            protected String doInBackground() throws Exception {
+                try {
+                    return job.call();
+                } catch (Exception ex) {
+                    if (outputFile != null) {
+                        Files.deleteIfExists(outputFile.toPath());
+                    }
+                    throw ex;
+                } finally {
+                    metrics.finish();
+                    SwingUtilities.invokeLater(this::settle);
+                }
             }
 
-            // Step 3: Build Huffman Tree from the frequency table
-            buildHuffmanTreeFromFrequencyTable(frequencyTable);
-
-            // Step 4: Start decoding the file
-            Node root = heap[0]; // The root of the Huffman Tree
-            Node currentNode = root;
-            int bitBuffer = 0;
-            int bitCount = 0;
-            int ch;
-            int charswritten = 0;
-
-            while ((ch = dis.read()) != -1) {
-                bitBuffer = (bitBuffer << 8) | ch; // Add the next byte to the bitBuffer
-                bitCount += 8;
-
-                while (bitCount >= 1) {
-                    int bit = (bitBuffer >> (bitCount - 1)) & 1;
-                    currentNode = (bit == 0) ? currentNode.left : currentNode.right;
-                    bitCount--;
-
-                    // If leaf node is reached, output the character
-                    if (currentNode.left == null && currentNode.right == null) {
-                        writer.write(currentNode.data);
-                        charswritten += 1;
-                        currentNode = root; // Reset to root for the next character
-                    }
-                    if (charswritten == count) {
-                        break;
+            @Override
+            protected void done() {
+                settle();
+            }
+
+            // Shows the outcome and re-enables the controls once the job is
+            // both done and no longer running
+            private void settle() {
+                if (--pending > 0) {
+                    if (isCancelled()) {
+                        progressBar.setString("Cancelling...");
                     }
+                    return;
                 }
+                setRunning(false);
+                updateMetrics();
+                try {
+                    outputTextArea.setText(get());
+                    progressBar.setString("Done");
+                } catch (CancellationException ex) {
+                    outputTextArea.setText("Cancelled.");
+                    progressBar.setString("Cancelled");
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    outputTextArea.setText("Error: " + cause.getMessage());
+                    progressBar.setString("Failed");
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                currentJob = null;
             }
+        };
+        currentJob.execute();
+    }
 
-            writer.flush(); // Make sure everything is written to the output file
+    // Switches the controls between the idle and running states
+    private void setRunning(boolean running) {
+        compressButton.setEnabled(!running);
+        compressFolderButton.setEnabled(!running);
+        decompressButton.setEnabled(!running);
+        formatComboBox.setEnabled(!running);
+        cancelButton.setEnabled(running);
+        if (running) {
+            progressBar.setValue(0);
+            progressBar.setString("0%");
+            metricsTimer.start();
+        } else {
+            metricsTimer.stop();
+            progressBar.setIndeterminate(false);
         }
     }
 
-    // Helper method to rebuild the Huffman tree from the frequency table
-    // Rebuilds the Huffman tree using the frequency table (used during
-    // decompression)
-    private void buildHuffmanTreeFromFrequencyTable(int[] frequencyTable) {
-        // Reset heap before building the tree
-        heapSize = 0;
-
-        // Insert all characters with non-zero frequency into the heap
-        for (int i = 0; i < MAX_CHAR; i++) {
-            if (frequencyTable[i] > 0) {
-                insertHeap(new Node((char) i, frequencyTable[i])); // Create a leaf node for each character
+    // Copies the current metrics into the progress bar and metrics panel
+    private void updateMetrics() {
+        double progress = metrics.getProgress();
+        if (currentJob != null && !currentJob.isCancelled()) {
+            progressBar.setIndeterminate(progress < 0);
+            if (progress >= 0) {
+                progressBar.setValue((int) (progress * 1000));
+                progressBar.setString(String.format("%.1f%%", progress * 100));
             }
         }
-
-        // Repeatedly combine the two nodes with lowest frequencies
-        while (heapSize > 1) {
-            Node node1 = extractMin(); // Get first minimum node
-            Node node2 = extractMin(); // Get second minimum node
-
-            // Create a new internal node with combined frequency
-            Node newNode = new Node(node1.frequency + node2.frequency);
-            newNode.left = node1;
-            newNode.right = node2;
-
-            insertHeap(newNode); // Insert the new node back into the heap
+        for (HuffmanListener.Phase phase : HuffmanListener.Phase.values()) {
+            phaseLabels[phase.ordinal()].setText(metrics.getPhaseMillis(phase) + " ms");
         }
-        // At the end, the heap contains only one node, which is the root of the Huffman
-        // tree
+        throughputLabel.setText(String.format("%.1f MB/s", metrics.getThroughputMegabytesPerSecond()));
+        peakHeapLabel.setText(metrics.getPeakHeapBytes() / (1024 * 1024) + " MB");
+        elapsedLabel.setText(formatTime(metrics.getElapsedMillis()));
+        lengthLimitLabel.setText(String.format("%.3f%%", metrics.getLengthLimitCostPercent()));
     }
 
     // Entry point of the program - launches the GUI in a thread-safe manner
@@ -0,0 +1,99 @@
+package huffman;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+// Generated benchmark inputs. Every corpus is produced from a fixed seed so
+// runs on different machines and revisions measure the same symbols.
+public enum BenchmarkCorpus {
+
+    // Natural-language-like text with Zipf-distributed words, coded as 16-bit characters
+    SKEWED_TEXT(HuffmanBlockCodec.MAX_CHAR),
+    // The same kind of text coded byte by byte
+    SKEWED_BYTES(HuffmanBlockCodec.BYTE_ALPHABET),
+    // Uniformly random bytes, the worst case for Huffman coding
+    UNIFORM_BYTES(HuffmanBlockCodec.BYTE_ALPHABET);
+
+    private static final long SEED = 0x48554642L;
+    private static final String[] WORDS = { "the", "of", "and", "to", "in", "a", "is", "that", "for", "it", "as",
+            "was", "with", "be", "by", "on", "not", "he", "this", "are", "or", "his", "from", "at", "which", "but",
+            "have", "an", "had", "they", "you", "were", "their", "one", "all", "we", "can", "her", "has", "there",
+            "been", "if", "more", "when", "will", "would", "who", "so", "no", "compression", "Huffman", "straße",
+            "naïve", "café", "€", "日本語", "\n" };
+
+    final int alphabetSize;
+
+    BenchmarkCorpus(int alphabetSize) {
+        this.alphabetSize = alphabetSize;
+    }
+
+    // Returns 'length' symbols of this corpus
+    char[] symbols(int length) {
+        Random random = new Random(SEED);
+        char[] data = new char[length];
+        if (this == UNIFORM_BYTES) {
+            for (int i = 0; i < length; i++) {
+                data[i] = (char) random.nextInt(256);
+            }
+            return data;
+        }
+
+        // Skewed text: pick words with probability ~ 1/rank
+        int filled = 0;
+        while (filled < length) {
+            String word = WORDS[zipfRank(random)];
+            if (this == SKEWED_BYTES) {
+                byte[] bytes = (word + " ").getBytes(StandardCharsets.UTF_8);
+                for (int i = 0; i < bytes.length && filled < length; i++) {
+                    data[filled++] = (char) (bytes[i] & 0xFF);
+                }
+            } else {
+                for (int i = 0; i <= word.length() && filled < length; i++) {
+                    data[filled++] = i < word.length() ? word.charAt(i) : ' ';
+                }
+            }
+        }
+        return data;
+    }
+
+    // Writes 'size' symbols of this corpus to 'file' without holding them in
+    // memory. Text corpora are written in the platform charset, which text mode
+    // reads them back with; byte corpora are written as raw bytes.
+    void writeFile(Path file, long size) throws IOException {
+        int chunkLength = 1 << 20;
+        char[] chunk = symbols(chunkLength);
+        if (this == SKEWED_TEXT) {
+            try (Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(Files.newOutputStream(file), Charset.defaultCharset()))) {
+                for (long written = 0; written < size; written += chunkLength) {
+                    writer.write(chunk, 0, (int) Math.min(chunkLength, size - written));
+                }
+            }
+            return;
+        }
+        byte[] bytes = new byte[chunkLength];
+        for (int i = 0; i < chunkLength; i++) {
+            bytes[i] = (byte) chunk[i];
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += chunkLength) {
+                out.write(bytes, 0, (int) Math.min(chunkLength, size - written));
+            }
+        }
+    }
+
+    // Draws a word rank from an approximate Zipf distribution
+    private static int zipfRank(Random random) {
+        double u = random.nextDouble();
+        int rank = (int) Math.floor(Math.pow(WORDS.length + 1, u)) - 1;
+        return Math.min(rank, WORDS.length - 1);
+    }
+}
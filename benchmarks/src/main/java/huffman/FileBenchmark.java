@@ -0,0 +1,81 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// End-to-end compression and decompression of generated files through the
+// public HuffmanCodec, including file I/O and the block-parallel pipeline.
+// Each invocation handles the whole file, so the time per operation divided
+// into the file size gives MB/s. Use "-p sizeMb=..." to change the file
+// size and "-p format=..." to pick the formats to run.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileBenchmark {
+
+    @Param({ "BINARY_BLOCKS", "TEXT_BLOCKS", "TEXT_SINGLE_STREAM" })
+    public HuffmanCodec.Format format;
+
+    // Multi-GB by default; the generated file is deleted after the run
+    @Param({ "2048" })
+    public long sizeMb;
+
+    private final HuffmanCodec codec = new HuffmanCodec(HuffmanCodec.DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    private Path directory;
+    private Path input;
+    private Path compressed;
+    private Path decompressed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("huffman-bench");
+        input = directory.resolve("input");
+        compressed = directory.resolve("compressed.bin");
+        decompressed = directory.resolve("decompressed");
+
+        // Text formats get text (sizeMb million characters), binary gets skewed bytes
+        BenchmarkCorpus corpus = format == HuffmanCodec.Format.BINARY_BLOCKS
+                ? BenchmarkCorpus.SKEWED_BYTES
+                : BenchmarkCorpus.SKEWED_TEXT;
+        corpus.writeFile(input, sizeMb << 20);
+        codec.compressFile(input, compressed, format);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(compressed);
+        Files.deleteIfExists(decompressed);
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public void compressFile() throws IOException {
+        codec.compressFile(input, compressed, format);
+    }
+
+    @Benchmark
+    public void decompressFile() throws IOException {
+        codec.decompressFile(compressed, decompressed);
+    }
+}
@@ -0,0 +1,213 @@
+package huffman;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures every stage of compressing and decompressing one block separately:
+// frequency counting, tree construction, code generation (including the code
+// length limit), encoding, decode table construction and decoding, plus the
+// whole block in each direction.
+//
+// Every benchmark reports a "megabytes" rate, the MB of input symbols per
+// second (one byte per symbol in byte mode, two in text mode). Run with
+// "-prof gc" to also get the allocation rate.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    @Param({ "SKEWED_TEXT", "SKEWED_BYTES", "UNIFORM_BYTES" })
+    public BenchmarkCorpus corpus;
+
+    // 4 KB stands for small files, 1M is the default block size
+    @Param({ "4096", "1048576" })
+    public int size;
+
+    // Code length limit: 11 bits fits every code into one decode table lookup
+    @Param({ "11", "15" })
+    public int maxCodeLength;
+
+    private char[] data;
+    private int alphabetSize;
+    private int[] frequencyTable;
+    private HuffmanTreeBuilder treeBuilder;
+    private int[] treeLengths; // Unlimited code lengths straight from the tree
+    private int[] codeLengths;
+    private long[] codes;
+    private HuffmanBlockOptions options;
+    private byte[] payload;
+    private byte[] interleavedPayload;
+    private int headerLength; // Bytes of code lengths in front of the payload's bitstream
+    private HuffmanDecodeTable decodeTable;
+    private char[] decoded;
+    private ByteArrayOutputStream encoded;
+    private HuffmanBlockEncoder encoder;
+
+    // Input consumed per second, in MB
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+        public double megabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            megabytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        data = corpus.symbols(size);
+        alphabetSize = corpus.alphabetSize;
+
+        // Run the pipeline once so every stage can start from the output of the previous one
+        frequencyTable = new int[alphabetSize];
+        HuffmanHistogram.count(data, 0, size, frequencyTable);
+        treeBuilder = new HuffmanTreeBuilder();
+        treeLengths = new int[alphabetSize];
+        treeBuilder.codeLengths(frequencyTable, alphabetSize, treeLengths);
+        codeLengths = treeLengths.clone();
+        codes = new long[alphabetSize];
+        CanonicalHuffman.limitCodeLengths(frequencyTable, codeLengths, alphabetSize, maxCodeLength);
+        CanonicalHuffman.assignCodes(codeLengths, alphabetSize, codes);
+        // Stored blocks are turned off so every corpus, UNIFORM_BYTES included,
+        // is measured through the Huffman coder and decoder
+        options = new HuffmanBlockOptions(maxCodeLength, false, 0, HuffmanLz77.DEFAULT_WINDOW_BITS, 0);
+        payload = HuffmanBlockCodec.encodeBlock(data, size, alphabetSize, options, HuffmanListener.NONE);
+        interleavedPayload = HuffmanBlockCodec.encodeBlock(data, size, alphabetSize,
+                new HuffmanBlockOptions(maxCodeLength, true, 0, HuffmanLz77.DEFAULT_WINDOW_BITS, 0),
+                HuffmanListener.NONE);
+        ByteArrayInputStream header = new ByteArrayInputStream(payload);
+        CanonicalHuffman.readCodeLengths(new DataInputStream(header), new int[alphabetSize], alphabetSize);
+        headerLength = payload.length - header.available();
+        decodeTable = new HuffmanDecodeTable(codeLengths, alphabetSize);
+        decoded = new char[size];
+        encoded = new ByteArrayOutputStream(2 * size + 64);
+        encoder = new HuffmanBlockEncoder();
+    }
+
+    @Benchmark
+    public int[] countFrequencies(Throughput throughput) {
+        int[] table = new int[alphabetSize];
+        HuffmanHistogram.count(data, 0, size, table);
+        count(throughput);
+        return table;
+    }
+
+    // Baseline for countFrequencies: one table, one symbol at a time
+    @Benchmark
+    public int[] countFrequenciesSingleTable(Throughput throughput) {
+        int[] table = new int[alphabetSize];
+        for (int i = 0; i < size; i++) {
+            table[data[i]]++;
+        }
+        count(throughput);
+        return table;
+    }
+
+    @Benchmark
+    public int[] buildTree(Throughput throughput) {
+        count(throughput);
+        treeBuilder.codeLengths(frequencyTable, alphabetSize, treeLengths);
+        return treeLengths;
+    }
+
+    @Benchmark
+    public long[] generateCodes(Throughput throughput) {
+        int[] lengths = treeLengths.clone();
+        long[] canonical = new long[alphabetSize];
+        CanonicalHuffman.limitCodeLengths(frequencyTable, lengths, alphabetSize, maxCodeLength);
+        CanonicalHuffman.assignCodes(lengths, alphabetSize, canonical);
+        count(throughput);
+        return canonical;
+    }
+
+    // Only the bit packing loop, with the code tables already built
+    @Benchmark
+    public int encodeSymbols(Throughput throughput) throws IOException {
+        encoded.reset();
+        HuffmanBitWriter bitWriter = new HuffmanBitWriter(encoded);
+        for (int i = 0; i < size; i++) {
+            char ch = data[i];
+            bitWriter.write(codes[ch], codeLengths[ch]);
+        }
+        bitWriter.finish();
+        count(throughput);
+        return encoded.size();
+    }
+
+    @Benchmark
+    public HuffmanDecodeTable buildDecodeTable(Throughput throughput) throws IOException {
+        count(throughput);
+        return new HuffmanDecodeTable(codeLengths, alphabetSize);
+    }
+
+    // Only the table-driven decoding loop, with the decode table already built
+    @Benchmark
+    public char[] decodeSymbols(Throughput throughput) throws IOException {
+        DataInputStream bits = new DataInputStream(
+                new ByteArrayInputStream(payload, headerLength, payload.length - headerLength));
+        HuffmanDecoder decoder = new HuffmanDecoder(decodeTable, bits, size);
+        int filled = 0;
+        while (filled < size) {
+            filled += decoder.read(decoded, filled, size - filled);
+        }
+        count(throughput);
+        return decoded;
+    }
+
+    // Counting, tree, codes, header and bitstream of one block
+    @Benchmark
+    public byte[] encodeBlock(Throughput throughput) throws IOException {
+        count(throughput);
+        return HuffmanBlockCodec.encodeBlock(data, size, alphabetSize, options, HuffmanListener.NONE);
+    }
+
+    // encodeBlock without copying the payload out of the encoder's buffer,
+    // which is what a steady-state caller such as HuffmanOutputStream pays
+    @Benchmark
+    public int encodeBlockReused(Throughput throughput) throws IOException {
+        count(throughput);
+        return encoder.encode(data, size, alphabetSize, options, HuffmanListener.NONE);
+    }
+
+    // Header, decode table and bitstream of one block
+    @Benchmark
+    public char[] decodeBlock(Throughput throughput) throws IOException {
+        count(throughput);
+        return HuffmanBlockCodec.decodeBlock(payload, size, alphabetSize);
+    }
+
+    // The same block split into four interleaved bitstreams
+    @Benchmark
+    public char[] decodeInterleavedBlock(Throughput throughput) throws IOException {
+        count(throughput);
+        return HuffmanBlockCodec.decodeBlock(interleavedPayload, size, alphabetSize,
+                HuffmanBlockCodec.LAYOUT_INTERLEAVED, HuffmanListener.NONE);
+    }
+
+    private void count(Throughput throughput) {
+        int bytesPerSymbol = alphabetSize == HuffmanBlockCodec.BYTE_ALPHABET ? 1 : 2;
+        throughput.megabytes += (double) size * bytesPerSymbol / (1 << 20);
+    }
+}
@@ -0,0 +1,258 @@
+package huffman;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+// Canonical Huffman codes. Only the code length of every symbol is stored;
+// the codes themselves are reassigned in (length, symbol) order, so encoder
+// and decoder can both rebuild them from the lengths alone.
+//
+// Code lengths are written run-length encoded over the whole alphabet as
+// pairs of (byte length, varint runLength - 1), with length 0 for unused symbols.
+//
+// Encoders limit their code lengths (15 bits by default) with package-merge,
+// which finds the best prefix code under that limit. Short codes keep the
+// decode table small and make long-code lookups rare.
+class CanonicalHuffman {
+
+    // Longest code accepted; a Huffman tree over int frequencies is never deeper
+    static final int MAX_CODE_LENGTH = 48;
+
+    // Code length limit used by encoders unless configured otherwise
+    static final int DEFAULT_MAX_CODE_LENGTH = 15;
+
+    private CanonicalHuffman() {
+    }
+
+    // Replaces code lengths longer than 'maxLength' with the optimal prefix
+    // code whose codes are at most 'maxLength' bits, found with package-merge.
+    // The limit is raised to the shortest one that can hold every used symbol.
+    // Returns false if the lengths were already within the limit.
+    static boolean limitCodeLengths(int[] frequencyTable, int[] codeLengths, int alphabetSize, int maxLength) {
+        int used = 0;
+        int longest = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (codeLengths[i] != 0) {
+                used++;
+                longest = Math.max(longest, codeLengths[i]);
+            }
+        }
+        int limit = Math.max(maxLength, 32 - Integer.numberOfLeadingZeros(used - 1));
+        if (longest <= limit) {
+            return false;
+        }
+
+        // Step 1: Sort the used symbols by frequency, packed as (frequency << 20) | symbol
+        long[] sorted = new long[used];
+        int n = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (codeLengths[i] != 0) {
+                sorted[n++] = ((long) frequencyTable[i] << 20) | i;
+            }
+        }
+        Arrays.sort(sorted);
+        long[] leafWeights = new long[used];
+        for (int i = 0; i < used; i++) {
+            leafWeights[i] = sorted[i] >>> 20;
+        }
+
+        // Step 2: Package-merge. The first list holds the leaves; every further
+        // list merges the leaves with the pairs ("packages") of the list before
+        // it, cheapest first, and remembers which of its items are leaves.
+        boolean[][] isLeaf = new boolean[limit][];
+        isLeaf[0] = new boolean[used];
+        Arrays.fill(isLeaf[0], true);
+        long[] previous = leafWeights;
+        for (int level = 1; level < limit; level++) {
+            int packages = previous.length / 2;
+            long[] merged = new long[used + packages];
+            boolean[] leaf = new boolean[used + packages];
+            int i = 0;
+            int j = 0;
+            for (int k = 0; k < merged.length; k++) {
+                long packageWeight = j < packages ? previous[2 * j] + previous[2 * j + 1] : Long.MAX_VALUE;
+                if (i < used && leafWeights[i] <= packageWeight) {
+                    merged[k] = leafWeights[i++];
+                    leaf[k] = true;
+                } else {
+                    merged[k] = packageWeight;
+                    j++;
+                }
+            }
+            isLeaf[level] = leaf;
+            previous = merged;
+        }
+
+        // Step 3: Take the 2 * (used - 1) cheapest items of the last list. Each
+        // time a symbol's leaf is among the items taken from a list, its code
+        // grows by one bit; a package taken stands for two items of the list
+        // before it. Leaves are merged in frequency order, so the leaves taken
+        // from a list are always the least frequent symbols.
+        for (int i = 0; i < used; i++) {
+            codeLengths[(int) (sorted[i] & 0xFFFFF)] = 0;
+        }
+        int take = 2 * (used - 1);
+        for (int level = limit - 1; level >= 0; level--) {
+            boolean[] leaf = isLeaf[level];
+            int leaves = 0;
+            for (int k = 0; k < take; k++) {
+                if (leaf[k]) {
+                    leaves++;
+                }
+            }
+            for (int i = 0; i < leaves; i++) {
+                codeLengths[(int) (sorted[i] & 0xFFFFF)]++;
+            }
+            take = 2 * (take - leaves);
+        }
+        return true;
+    }
+
+    // Returns the number of bits the symbols counted in 'frequencyTable' take
+    // with the given code lengths
+    static long encodedBits(int[] frequencyTable, int[] codeLengths, int alphabetSize) {
+        long bits = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            bits += (long) frequencyTable[i] * codeLengths[i];
+        }
+        return bits;
+    }
+
+    // Same as encodedBits for 64-bit frequencies, which a whole file may need
+    static long encodedBits(long[] frequencyTable, int[] codeLengths, int alphabetSize) {
+        long bits = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            bits += frequencyTable[i] * codeLengths[i];
+        }
+        return bits;
+    }
+
+    // Returns the frequencies as ints whose total fits an int, halving all of
+    // them (rounding up, so no used symbol drops out) until it does. The
+    // Huffman tree over the result stays within MAX_CODE_LENGTH and is
+    // practically as good as the one over the exact counts.
+    static int[] scaleFrequencies(long[] frequencyTable, int alphabetSize) {
+        int shift = 0;
+        while (scaledTotal(frequencyTable, alphabetSize, shift) > Integer.MAX_VALUE) {
+            shift++;
+        }
+        int[] scaled = new int[alphabetSize];
+        for (int i = 0; i < alphabetSize; i++) {
+            scaled[i] = (int) scale(frequencyTable[i], shift);
+        }
+        return scaled;
+    }
+
+    private static long scaledTotal(long[] frequencyTable, int alphabetSize, int shift) {
+        long total = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            total += scale(frequencyTable[i], shift);
+        }
+        return total;
+    }
+
+    private static long scale(long frequency, int shift) {
+        return frequency == 0 ? 0 : ((frequency - 1) >>> shift) + 1;
+    }
+
+    // Assigns canonical codes: shorter codes first, and within one length in
+    // increasing symbol order
+    static void assignCodes(int[] codeLengths, int alphabetSize, long[] codes) {
+        int[] lengthCount = new int[MAX_CODE_LENGTH + 1];
+        for (int i = 0; i < alphabetSize; i++) {
+            lengthCount[codeLengths[i]]++;
+        }
+        lengthCount[0] = 0;
+
+        // First code of every length
+        long[] nextCode = new long[MAX_CODE_LENGTH + 1];
+        long code = 0;
+        for (int length = 1; length <= MAX_CODE_LENGTH; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            nextCode[length] = code;
+        }
+
+        for (int i = 0; i < alphabetSize; i++) {
+            int length = codeLengths[i];
+            if (length != 0) {
+                codes[i] = nextCode[length]++;
+            }
+        }
+    }
+
+    // Writes the code lengths of the whole alphabet as runs of equal lengths
+    static void writeCodeLengths(DataOutputStream dos, int[] codeLengths, int alphabetSize) throws IOException {
+        int i = 0;
+        while (i < alphabetSize) {
+            int length = codeLengths[i];
+            int run = 1;
+            while (i + run < alphabetSize && codeLengths[i + run] == length) {
+                run++;
+            }
+            dos.writeByte(length);
+            writeVarInt(dos, run - 1);
+            i += run;
+        }
+    }
+
+    // Reads code lengths written by writeCodeLengths into codeLengths
+    static void readCodeLengths(DataInputStream dis, int[] codeLengths, int alphabetSize) throws IOException {
+        int i = 0;
+        while (i < alphabetSize) {
+            int length = dis.readUnsignedByte();
+            int run = readVarInt(dis) + 1;
+            if (length > MAX_CODE_LENGTH || run <= 0 || run > alphabetSize - i) {
+                throw new IOException("Corrupt code length table");
+            }
+            for (int end = i + run; i < end; i++) {
+                codeLengths[i] = length;
+            }
+        }
+    }
+
+    // Writes a non-negative int in 7-bit groups, least significant group first
+    static void writeVarInt(DataOutputStream dos, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            dos.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dos.writeByte(value);
+    }
+
+    // Reads an int written by writeVarInt
+    static int readVarInt(DataInputStream dis) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = dis.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+
+    // Writes a non-negative long in 7-bit groups, least significant group first
+    static void writeVarLong(DataOutputStream dos, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            dos.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dos.writeByte((int) value);
+    }
+
+    // Reads a long written by writeVarLong
+    static long readVarLong(DataInputStream dis) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = dis.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+}
@@ -0,0 +1,360 @@
+package huffman;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// Packs a directory tree into one archive. Files are compressed concurrently
+// on a bounded pool of entry workers, each file as its own block-framed byte
+// stream, and written one after another. A central directory at the end
+// records every entry, so a single entry can be extracted by seeking straight
+// to it.
+//
+// Layout:
+//   int ARCHIVE_MAGIC
+//   entry data: one block-framed byte mode stream per file
+//   central directory: int entryCount, then per entry: UTF name ('/'
+//     separated, relative to the archived directory), long offset,
+//     long compressedSize, long originalSize, int crc32 of the original bytes
+//   trailer: long directoryOffset, int ARCHIVE_MAGIC
+public final class HuffmanArchive {
+
+    static final int ARCHIVE_MAGIC = 0x48554641; // "HUFA"
+    private static final int TRAILER_SIZE = 12;
+
+    // Compressed entries up to this size are kept in memory until they are
+    // written; larger ones go through a temporary file
+    private static final long IN_MEMORY_ENTRY = 8L << 20;
+
+    // One file stored in an archive
+    public static final class Entry {
+        private final String name;
+        private final long offset;
+        private final long compressedSize;
+        private final long originalSize;
+        private final int crc;
+
+        Entry(String name, long offset, long compressedSize, long originalSize, int crc) {
+            this.name = name;
+            this.offset = offset;
+            this.compressedSize = compressedSize;
+            this.originalSize = originalSize;
+            this.crc = crc;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long offset() {
+            return offset;
+        }
+
+        public long compressedSize() {
+            return compressedSize;
+        }
+
+        public long originalSize() {
+            return originalSize;
+        }
+
+        public int crc() {
+            return crc;
+        }
+    }
+
+    // An entry compressed by a worker, waiting to be appended to the archive
+    private static final class CompressedEntry {
+        final String name;
+        final long originalSize;
+        final int crc;
+        final byte[] data; // Compressed bytes, or null if they are in tempFile
+        final Path tempFile;
+        final long compressedSize;
+
+        CompressedEntry(String name, long originalSize, int crc, byte[] data, Path tempFile, long compressedSize) {
+            this.name = name;
+            this.originalSize = originalSize;
+            this.crc = crc;
+            this.data = data;
+            this.tempFile = tempFile;
+            this.compressedSize = compressedSize;
+        }
+    }
+
+    private final HuffmanCodec codec;
+    private final int threads;
+
+    // Creates an archiver that compresses up to 'threads' files at once with 'codec'
+    public HuffmanArchive(HuffmanCodec codec, int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        this.codec = codec;
+        this.threads = threads;
+    }
+
+    // Returns the regular files below 'directory' in the order they are archived
+    public static List<Path> listFiles(Path directory) throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            return walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+    }
+
+    // Compresses every regular file below 'sourceDirectory' into 'archiveFile'
+    // and returns the entries written. The archive itself is skipped if it lies
+    // inside the directory.
+    public List<Entry> create(Path sourceDirectory, Path archiveFile) throws IOException {
+        Path archivePath = archiveFile.toAbsolutePath().normalize();
+        List<Path> files = new ArrayList<>();
+        for (Path file : listFiles(sourceDirectory)) {
+            if (!file.toAbsolutePath().normalize().equals(archivePath)) {
+                files.add(file);
+            }
+        }
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+        List<Entry> entries = new ArrayList<>();
+        boolean completed = false;
+        try (FileChannel out = FileChannel.open(archiveFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(out, ByteBuffer.allocate(4).putInt(ARCHIVE_MAGIC).flip());
+
+            // Step 1: Compress files on the workers, appending them in order as they finish;
+            // at most two per worker are held at once
+            for (Path file : files) {
+                HuffmanBlockCodec.checkCancelled();
+                String name = entryName(sourceDirectory, file);
+                pending.add(workers.submit(() -> compressEntry(name, file, archivePath.getParent())));
+                if (pending.size() >= 2 * threads) {
+                    entries.add(append(out, HuffmanBlockCodec.await(pending.poll())));
+                }
+            }
+            while (!pending.isEmpty()) {
+                entries.add(append(out, HuffmanBlockCodec.await(pending.poll())));
+            }
+
+            // Step 2: Write the central directory and the trailer pointing to it
+            long directoryOffset = out.position();
+            ByteArrayOutputStream directory = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(directory);
+            dos.writeInt(entries.size());
+            for (Entry entry : entries) {
+                dos.writeUTF(entry.name);
+                dos.writeLong(entry.offset);
+                dos.writeLong(entry.compressedSize);
+                dos.writeLong(entry.originalSize);
+                dos.writeInt(entry.crc);
+            }
+            dos.writeLong(directoryOffset);
+            dos.writeInt(ARCHIVE_MAGIC);
+            writeFully(out, ByteBuffer.wrap(directory.toByteArray()));
+            completed = true;
+        } finally {
+            if (!completed) {
+                // Finished entries that were never appended still own their temporary files
+                for (Future<CompressedEntry> future : pending) {
+                    if (!future.cancel(true) && future.isDone() && !future.isCancelled()) {
+                        try {
+                            deleteTemp(future.get());
+                        } catch (Exception e) {
+                            // The entry failed, so it has no temporary file left
+                        }
+                    }
+                }
+            }
+            workers.shutdownNow();
+        }
+        return entries;
+    }
+
+    // Reads the central directory of an archive
+    public static List<Entry> list(Path archiveFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(archiveFile, StandardOpenOption.READ)) {
+            return readDirectory(channel);
+        }
+    }
+
+    // Returns true if 'file' starts with the archive magic number
+    public static boolean isArchive(Path file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file.toFile()))) {
+            return dis.readInt() == ARCHIVE_MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // Extracts the entry called 'name' to 'target', reading only that entry's
+    // bytes, and checks it against the stored checksum
+    public void extract(Path archiveFile, String name, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(archiveFile, StandardOpenOption.READ)) {
+            for (Entry entry : readDirectory(channel)) {
+                if (entry.name.equals(name)) {
+                    extractEntry(channel, entry, target);
+                    return;
+                }
+            }
+        }
+        throw new FileNotFoundException("No entry named " + name + " in " + archiveFile);
+    }
+
+    // Extracts every entry below 'targetDirectory' and returns the entries
+    public List<Entry> extractAll(Path archiveFile, Path targetDirectory) throws IOException {
+        try (FileChannel channel = FileChannel.open(archiveFile, StandardOpenOption.READ)) {
+            List<Entry> entries = readDirectory(channel);
+            Path root = targetDirectory.toAbsolutePath().normalize();
+            for (Entry entry : entries) {
+                HuffmanBlockCodec.checkCancelled();
+                Path target = root.resolve(entry.name).normalize();
+                if (!target.startsWith(root) || target.equals(root)) {
+                    throw new IOException("Entry name escapes the target directory: " + entry.name);
+                }
+                Files.createDirectories(target.getParent());
+                extractEntry(channel, entry, target);
+            }
+            return entries;
+        }
+    }
+
+    // Compresses one file on a worker thread, computing its checksum on the way
+    private CompressedEntry compressEntry(String name, Path file, Path tempDirectory) throws IOException {
+        long size = Files.size(file);
+        CRC32 crc = new CRC32();
+        if (size <= IN_MEMORY_ENTRY) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) size / 2 + 64);
+            try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc)) {
+                codec.compress(in, bytes);
+            }
+            byte[] data = bytes.toByteArray();
+            return new CompressedEntry(name, size, (int) crc.getValue(), data, null, data.length);
+        }
+
+        Path tempFile = Files.createTempFile(tempDirectory, "huffman-", ".tmp");
+        try (InputStream in = new CheckedInputStream(Files.newInputStream(file), crc);
+                OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempFile), 65536)) {
+            codec.compress(in, out);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        return new CompressedEntry(name, size, (int) crc.getValue(), null, tempFile, Files.size(tempFile));
+    }
+
+    // Appends a compressed entry at the end of the archive
+    private static Entry append(FileChannel out, CompressedEntry entry) throws IOException {
+        long offset = out.position();
+        if (entry.data != null) {
+            writeFully(out, ByteBuffer.wrap(entry.data));
+        } else {
+            try (FileChannel in = FileChannel.open(entry.tempFile, StandardOpenOption.READ)) {
+                long copied = 0;
+                while (copied < entry.compressedSize) {
+                    copied += in.transferTo(copied, entry.compressedSize - copied, out);
+                }
+            } finally {
+                deleteTemp(entry);
+            }
+            out.position(offset + entry.compressedSize);
+        }
+        return new Entry(entry.name, offset, entry.compressedSize, entry.originalSize, entry.crc);
+    }
+
+    // Decompresses one entry, starting at its offset
+    private void extractEntry(FileChannel channel, Entry entry, Path target) throws IOException {
+        CRC32 crc = new CRC32();
+        channel.position(entry.offset);
+        InputStream in = Channels.newInputStream(channel); // Not closed: the channel is still needed
+        try (OutputStream out = new CheckedOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(target), 65536), crc)) {
+            codec.decompress(in, out);
+        }
+        if ((int) crc.getValue() != entry.crc) {
+            throw new IOException("Checksum mismatch in entry " + entry.name);
+        }
+    }
+
+    // Reads the trailer, then the central directory it points to
+    private static List<Entry> readDirectory(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size < 4 + 4 + TRAILER_SIZE) {
+            throw new IOException("Not an archive");
+        }
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+        readFully(channel, trailer, size - TRAILER_SIZE);
+        trailer.flip();
+        long directoryOffset = trailer.getLong();
+        if (trailer.getInt() != ARCHIVE_MAGIC || directoryOffset < 4 || directoryOffset > size - TRAILER_SIZE - 4) {
+            throw new IOException("Not an archive or archive is incomplete");
+        }
+
+        ByteBuffer directory = ByteBuffer.allocate((int) (size - TRAILER_SIZE - directoryOffset));
+        readFully(channel, directory, directoryOffset);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(directory.array()));
+        int count = dis.readInt();
+        if (count < 0) {
+            throw new IOException("Corrupt central directory");
+        }
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = dis.readUTF();
+            long offset = dis.readLong();
+            long compressedSize = dis.readLong();
+            long originalSize = dis.readLong();
+            int crc = dis.readInt();
+            if (offset < 4 || compressedSize < 0 || offset + compressedSize > directoryOffset) {
+                throw new IOException("Corrupt central directory entry: " + name);
+            }
+            entries.add(new Entry(name, offset, compressedSize, originalSize, crc));
+        }
+        return Collections.unmodifiableList(entries);
+    }
+
+    // Name of a file inside the archive: its path relative to the archived directory, '/' separated
+    private static String entryName(Path directory, Path file) {
+        StringBuilder name = new StringBuilder();
+        for (Path part : directory.relativize(file)) {
+            if (name.length() > 0) {
+                name.append('/');
+            }
+            name.append(part);
+        }
+        return name.toString();
+    }
+
+    private static void deleteTemp(CompressedEntry entry) throws IOException {
+        if (entry.tempFile != null) {
+            Files.deleteIfExists(entry.tempFile);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Packs variable-length codes into a 64-bit accumulator and writes whole words at once
+class HuffmanBitWriter {
+    private final OutputStream out;
+    private final byte[] buffer; // Output staging area, always a multiple of 8 bytes
+    private int position = 0;
+    private long accumulator = 0; // Pending bits, aligned to the most significant end
+    private int bitCount = 0; // Number of pending bits in the accumulator
+
+    HuffmanBitWriter(OutputStream out) {
+        this(out, 8192);
+    }
+
+    // Creates a writer that stages up to 'bufferSize' bytes (rounded up to a
+    // whole word) before passing them on, for streams known to be short
+    HuffmanBitWriter(OutputStream out, int bufferSize) {
+        this.out = out;
+        this.buffer = new byte[Math.max(8, (bufferSize + 7) & ~7)];
+    }
+
+    // Appends the low 'length' bits of 'code' (at most 64) to the stream
+    void write(long code, int length) throws IOException {
+        int free = 64 - bitCount;
+        if (length < free) {
+            accumulator |= code << (free - length);
+            bitCount += length;
+            return;
+        }
+
+        // The code fills the accumulator: emit it as one word and keep the remaining bits
+        int rest = length - free;
+        accumulator |= code >>> rest;
+        writeWord(accumulator);
+        accumulator = rest == 0 ? 0 : code << (64 - rest);
+        bitCount = rest;
+    }
+
+    // Writes the remaining bits padded with zeros up to a whole byte, then flushes
+    void finish() throws IOException {
+        while (bitCount > 0) {
+            if (position == buffer.length) {
+                out.write(buffer, 0, position);
+                position = 0;
+            }
+            buffer[position++] = (byte) (accumulator >>> 56);
+            accumulator <<= 8;
+            bitCount -= Math.min(8, bitCount);
+        }
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    // Drops any bits not yet written, so the writer can start a new stream
+    // even if the previous one was never finished
+    void reset() {
+        position = 0;
+        accumulator = 0;
+        bitCount = 0;
+    }
+
+    // Stores a full 64-bit word in big-endian order
+    private void writeWord(long word) throws IOException {
+        if (position == buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[position++] = (byte) (word >>> shift);
+        }
+    }
+}
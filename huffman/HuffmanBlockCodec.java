@@ -0,0 +1,649 @@
+package huffman;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+// Encodes and decodes independent blocks of symbols, each with its own code
+// table, and the framed container format that stores such blocks back to back
+// so that they can be compressed and decompressed on several threads at once.
+//
+// Two alphabets are supported: text mode codes 16-bit characters (65536
+// symbols) and byte mode codes raw bytes (256 symbols), which keeps every
+// per-symbol table small and round-trips arbitrary binary files.
+//
+// Framed layout:
+//   int FRAMED_MAGIC, FRAMED_INTERLEAVED_MAGIC or FRAMED_LZ77_MAGIC,
+//   int alphabetSize, int blockSize
+//   per block: int rawLength (symbols), int compressedLength (bytes), payload
+//   int 0 (end of blocks)
+// Each payload holds the run-length encoded canonical code lengths followed by
+// the block's Huffman bitstream, which is empty if only one symbol is used.
+// In the interleaved variant the bitstream is split into the independent
+// streams described in HuffmanInterleavedDecoder. In the LZ77 variant
+// (byte mode only) the payload holds the tokens described in HuffmanLz77.
+//
+// In every layout a block that would not shrink by the configured minimum is
+// stored instead: its payload is STORED_MARKER followed by the raw symbols
+// (one byte each in byte mode, two big-endian bytes in text mode). No code
+// length can take the marker's value, so the first byte tells the two apart.
+class HuffmanBlockCodec {
+
+    static final int MAX_CHAR = 65536; // Unicode range, the text mode alphabet
+    static final int BYTE_ALPHABET = 256; // Byte mode alphabet
+    static final int FRAMED_MAGIC = 0x48554642; // "HUFB"
+    static final int FRAMED_INTERLEAVED_MAGIC = 0x48554634; // "HUF4"
+    static final int FRAMED_LZ77_MAGIC = 0x4855465A; // "HUFZ"
+
+    static final int STORED_MARKER = 0xFF; // First payload byte of a stored block
+
+    // How the payloads of a framed file are laid out, given by its magic number
+    static final int LAYOUT_SINGLE = 0;
+    static final int LAYOUT_INTERLEAVED = 1;
+    static final int LAYOUT_LZ77 = 2;
+    static final int DEFAULT_BLOCK_SIZE = 1 << 20; // Symbols per block
+
+    // Largest region of an input file that is mapped at once
+    static final long MAP_WINDOW = 1L << 30;
+
+    // Window size used by mappedBlocks; tests lower it to cover inputs that
+    // span several windows without writing gigabytes
+    static volatile long mapWindow = MAP_WINDOW;
+
+    // One encoder per thread, so the workers of every job reuse their tables
+    // instead of allocating them for each block
+    private static final ThreadLocal<HuffmanBlockEncoder> ENCODERS = ThreadLocal.withInitial(HuffmanBlockEncoder::new);
+
+    private HuffmanBlockCodec() {
+    }
+
+    // A decoded block: symbols, or the payload of a stored byte mode block,
+    // whose bytes are written out as they are
+    private static final class DecodedBlock {
+        final char[] symbols;
+        final byte[] stored;
+
+        DecodedBlock(char[] symbols, byte[] stored) {
+            this.symbols = symbols;
+            this.stored = stored;
+        }
+    }
+
+    // Result of encoding one block on a worker thread
+    private static final class EncodedBlock {
+        final int rawLength;
+        final byte[] payload;
+
+        EncodedBlock(int rawLength, byte[] payload) {
+            this.rawLength = rawLength;
+            this.payload = payload;
+        }
+    }
+
+    // Supplies the next block to encode as a task, or null at the end of the input
+    private interface BlockReader {
+        Callable<EncodedBlock> next() throws IOException;
+    }
+
+    // Encodes 'length' symbols of 'data' as a self-contained block payload
+    static byte[] encodeBlock(char[] data, int length, int alphabetSize) throws IOException {
+        return encodeBlock(data, length, alphabetSize, HuffmanBlockOptions.DEFAULT, HuffmanListener.NONE);
+    }
+
+    // Encodes a block payload as set out by 'options', reporting the time of
+    // each phase to 'listener'. Uses the calling thread's encoder, so only
+    // the returned payload is allocated once the thread has encoded a block
+    // of this size.
+    static byte[] encodeBlock(char[] data, int length, int alphabetSize, HuffmanBlockOptions options,
+            HuffmanListener listener) throws IOException {
+        HuffmanBlockEncoder encoder = ENCODERS.get();
+        encoder.encode(data, length, alphabetSize, options, listener);
+        return encoder.toPayload();
+    }
+
+    // Returns the Shannon entropy of the counted symbols, in bits: a lower
+    // bound on the size of their Huffman bitstream
+    static long entropyBits(int[] frequencyTable, int alphabetSize, long total) {
+        if (total == 0) {
+            return 0;
+        }
+        double bits = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            int frequency = frequencyTable[i];
+            if (frequency != 0) {
+                bits += frequency * Math.log((double) total / frequency);
+            }
+        }
+        return (long) Math.ceil(bits / Math.log(2));
+    }
+
+    // Returns true if a payload estimated at 'estimatedBytes' saves at least
+    // the configured share of the stored block. A minimum of 0 turns stored
+    // blocks off, so every block is coded
+    static boolean worthCoding(long estimatedBytes, int length, int alphabetSize, HuffmanBlockOptions options) {
+        return options.minSavingPercent <= 0
+                || estimatedBytes <= storedSize(length, alphabetSize) * (1 - options.minSavingPercent / 100);
+    }
+
+    // Returns true if a coded payload of 'payloadBytes' is kept rather than
+    // replaced by the stored block
+    static boolean keepCoded(long payloadBytes, int length, int alphabetSize, HuffmanBlockOptions options) {
+        return options.minSavingPercent <= 0 || payloadBytes < storedSize(length, alphabetSize);
+    }
+
+    // Returns the size of the stored payload of 'length' symbols
+    static long storedSize(int length, int alphabetSize) {
+        return 1 + (long) length * (alphabetSize == BYTE_ALPHABET ? 1 : 2);
+    }
+
+    // Returns the largest payload the encoder writes for 'length' symbols in
+    // the given LAYOUT_*. A code built by limitCodeLengths never takes more
+    // bits than the stored symbols, so a coded block adds at most its code
+    // lengths (two bytes per symbol at worst) and, interleaved, the stream
+    // lengths and the padding of each stream. LZ77 tokens cost no more than
+    // with fixed-length codes: 9 bits per literal, and 43 bits with extra
+    // bits per match of at least MIN_MATCH bytes, so under two bytes a byte.
+    static long maxPayloadSize(int length, int alphabetSize, int layout) {
+        if (layout == LAYOUT_LZ77) {
+            return 2 * storedSize(length, alphabetSize)
+                    + 2L * (HuffmanLz77.LITERAL_LENGTH_SYMBOLS + HuffmanLz77.DISTANCE_SYMBOLS);
+        }
+        long size = storedSize(length, alphabetSize) + 2L * alphabetSize;
+        if (layout == LAYOUT_INTERLEAVED) {
+            size += (HuffmanInterleavedDecoder.STREAMS - 1) * 5 + HuffmanInterleavedDecoder.STREAMS;
+        }
+        return size;
+    }
+
+    // Returns true if 'payload' holds a stored block
+    static boolean isStored(byte[] payload) {
+        return payload.length > 0 && (payload[0] & 0xFF) == STORED_MARKER;
+    }
+
+    // Returns the symbols of a stored payload
+    private static char[] unstoreBlock(byte[] payload, int rawLength, int alphabetSize) throws IOException {
+        if (payload.length != storedSize(rawLength, alphabetSize)) {
+            throw new IOException("Corrupt stored block length");
+        }
+        char[] symbols = new char[rawLength];
+        if (alphabetSize == BYTE_ALPHABET) {
+            for (int i = 0; i < rawLength; i++) {
+                symbols[i] = (char) (payload[1 + i] & 0xFF);
+            }
+        } else {
+            for (int i = 0; i < rawLength; i++) {
+                symbols[i] = (char) ((payload[1 + 2 * i] & 0xFF) << 8 | (payload[2 + 2 * i] & 0xFF));
+            }
+        }
+        return symbols;
+    }
+
+    // Encodes the remaining bytes of 'block', widened to byte mode symbols
+    static byte[] encodeBlock(ByteBuffer block, HuffmanBlockOptions options, HuffmanListener listener)
+            throws IOException {
+        HuffmanBlockEncoder encoder = ENCODERS.get();
+        encoder.encode(block, options, listener);
+        return encoder.toPayload();
+    }
+
+    // Decodes one block payload back into its rawLength symbols
+    static char[] decodeBlock(byte[] payload, int rawLength, int alphabetSize) throws IOException {
+        return decodeBlock(payload, rawLength, alphabetSize, LAYOUT_SINGLE, HuffmanListener.NONE);
+    }
+
+    // Decodes a block payload in the given LAYOUT_*, reporting the time of
+    // each phase to 'listener'
+    static char[] decodeBlock(byte[] payload, int rawLength, int alphabetSize, int layout,
+            HuffmanListener listener) throws IOException {
+        if (isStored(payload)) {
+            long start = System.nanoTime();
+            char[] symbols = unstoreBlock(payload, rawLength, alphabetSize);
+            listener.phaseCompleted(HuffmanListener.Phase.DECODE, System.nanoTime() - start);
+            return symbols;
+        }
+        if (layout == LAYOUT_LZ77) {
+            return HuffmanLz77.decodeBlock(payload, rawLength, listener);
+        }
+        long start = System.nanoTime();
+        ByteArrayInputStream in = new ByteArrayInputStream(payload);
+        DataInputStream dis = new DataInputStream(in);
+        int[] codeLengths = new int[alphabetSize];
+        CanonicalHuffman.readCodeLengths(dis, codeLengths, alphabetSize);
+
+        HuffmanDecodeTable table = new HuffmanDecodeTable(codeLengths, alphabetSize);
+        long built = System.nanoTime();
+        listener.phaseCompleted(HuffmanListener.Phase.TREE_BUILD, built - start);
+
+        char[] symbols = new char[rawLength];
+        if (layout == LAYOUT_INTERLEAVED && table.singleSymbol < 0) {
+            // The stream lengths follow the code lengths, then the streams themselves
+            int[] streamStart = new int[HuffmanInterleavedDecoder.STREAMS + 1];
+            int[] streamLength = new int[HuffmanInterleavedDecoder.STREAMS - 1];
+            for (int k = 0; k < streamLength.length; k++) {
+                streamLength[k] = CanonicalHuffman.readVarInt(dis);
+            }
+            streamStart[0] = payload.length - in.available();
+            for (int k = 0; k < streamLength.length; k++) {
+                streamStart[k + 1] = streamStart[k] + streamLength[k];
+                if (streamLength[k] < 0 || streamStart[k + 1] > payload.length) {
+                    throw new IOException("Corrupt stream lengths in block");
+                }
+            }
+            streamStart[HuffmanInterleavedDecoder.STREAMS] = payload.length;
+            HuffmanInterleavedDecoder.decode(table, payload, streamStart, symbols, rawLength);
+        } else {
+            HuffmanDecoder decoder = new HuffmanDecoder(table, dis, rawLength);
+            int filled = 0;
+            while (filled < rawLength) {
+                filled += decoder.read(symbols, filled, rawLength - filled);
+            }
+        }
+        listener.phaseCompleted(HuffmanListener.Phase.DECODE, System.nanoTime() - built);
+        return symbols;
+    }
+
+    // Compresses the characters from 'reader' into the framed format (text mode)
+    static void compressFramed(Reader reader, WritableByteChannel out, int blockSize,
+            HuffmanBlockOptions options, ExecutorService pool, HuffmanListener listener) throws IOException {
+        boolean[] endOfInput = { false };
+        writeFramed(out, MAX_CHAR, blockSize, options, pool, listener, () -> {
+            if (endOfInput[0]) {
+                return null;
+            }
+            char[] block = new char[blockSize];
+            int filled = readBlock(reader, block);
+            endOfInput[0] = filled < blockSize;
+            if (filled == 0) {
+                return null;
+            }
+            return () -> new EncodedBlock(filled, encodeBlock(block, filled, MAX_CHAR, options, listener));
+        });
+    }
+
+    // Compresses the raw bytes from 'in' into the framed format (byte mode).
+    // Regular files are memory-mapped window by window so blocks are read
+    // straight from the page cache; other channels are read block by block.
+    static void compressFramed(ReadableByteChannel in, WritableByteChannel out, int blockSize,
+            HuffmanBlockOptions options, ExecutorService pool, HuffmanListener listener) throws IOException {
+        BlockReader blocks = null;
+        if (in instanceof FileChannel) {
+            blocks = mappedBlocks((FileChannel) in, blockSize, options, listener);
+        }
+        if (blocks == null) {
+            blocks = streamedBlocks(in, blockSize, options, listener);
+        }
+        writeFramed(out, BYTE_ALPHABET, blockSize, options, pool, listener, blocks);
+    }
+
+    // Compresses the bytes remaining in 'src' into the framed format (byte
+    // mode). Workers encode straight from slices of the buffer.
+    static void compressFramed(ByteBuffer src, WritableByteChannel out, int blockSize,
+            HuffmanBlockOptions options, ExecutorService pool, HuffmanListener listener) throws IOException {
+        ByteBuffer input = src.duplicate();
+        writeFramed(out, BYTE_ALPHABET, blockSize, options, pool, listener, () -> {
+            if (!input.hasRemaining()) {
+                return null;
+            }
+            ByteBuffer slice = nextSlice(input, blockSize);
+            listener.bytesProcessed(slice.remaining());
+            return () -> new EncodedBlock(slice.remaining(), encodeBlock(slice, options, listener));
+        });
+    }
+
+    // Splits a regular file into slices of mapped windows. Returns null when
+    // the channel has no usable size, e.g. because it is backed by a pipe.
+    private static BlockReader mappedBlocks(FileChannel channel, int blockSize,
+            HuffmanBlockOptions options, HuffmanListener listener) {
+        long size;
+        long start;
+        try {
+            size = channel.size();
+            start = channel.position();
+        } catch (IOException e) {
+            return null;
+        }
+        if (size <= start || blockSize <= 0) {
+            return null; // Nothing to map: let the streaming reader handle it
+        }
+
+        // Map whole numbers of blocks so that no block straddles two windows
+        long window = Math.max(blockSize, mapWindow / blockSize * blockSize);
+        return new BlockReader() {
+            private MappedByteBuffer mapped;
+            private long mappedStart;
+            private long position = start;
+
+            @Override
+            public Callable<EncodedBlock> next() throws IOException {
+                if (position >= size) {
+                    return null;
+                }
+                int length = (int) Math.min(blockSize, size - position);
+                if (mapped == null || position + length > mappedStart + mapped.capacity()) {
+                    mappedStart = position;
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position));
+                }
+                ByteBuffer view = mapped.duplicate();
+                view.position((int) (position - mappedStart));
+                ByteBuffer slice = nextSlice(view, length);
+                position += length;
+                listener.bytesProcessed(length);
+                return () -> new EncodedBlock(length, encodeBlock(slice, options, listener));
+            }
+        };
+    }
+
+    // Returns a view of the next 'length' bytes (or fewer at the end) of
+    // 'buffer' and advances its position past them
+    private static ByteBuffer nextSlice(ByteBuffer buffer, int length) {
+        int start = buffer.position();
+        int end = start + Math.min(length, buffer.remaining());
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(end);
+        buffer.position(end);
+        return slice.slice();
+    }
+
+    // Reads blocks from any channel into heap buffers
+    private static BlockReader streamedBlocks(ReadableByteChannel in, int blockSize,
+            HuffmanBlockOptions options, HuffmanListener listener) {
+        boolean[] endOfInput = { false };
+        return () -> {
+            if (endOfInput[0]) {
+                return null;
+            }
+            ByteBuffer block = ByteBuffer.allocate(blockSize);
+            while (block.hasRemaining() && in.read(block) != -1) {
+                // Keep reading until the block is full or the input ends
+            }
+            endOfInput[0] = block.hasRemaining();
+            block.flip();
+            int length = block.remaining();
+            if (length == 0) {
+                return null;
+            }
+            listener.bytesProcessed(length);
+            return () -> new EncodedBlock(length, encodeBlock(block, options, listener));
+        };
+    }
+
+    // Writes the framed header and all blocks. Blocks are encoded on 'pool'
+    // while the calling thread keeps reading and writes the finished blocks
+    // back in their original order. If the calling thread is interrupted, the
+    // blocks still pending are cancelled and an InterruptedIOException is thrown.
+    private static void writeFramed(WritableByteChannel out, int alphabetSize, int blockSize,
+            HuffmanBlockOptions options, ExecutorService pool, HuffmanListener listener, BlockReader blocks)
+            throws IOException {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        writeHeader(out, alphabetSize, blockSize, options.layout(alphabetSize));
+
+        // Bound the number of blocks held in memory at once
+        int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+        ArrayDeque<Future<EncodedBlock>> pending = new ArrayDeque<>();
+
+        boolean completed = false;
+        try {
+            Callable<EncodedBlock> task;
+            while ((task = blocks.next()) != null) {
+                checkCancelled();
+                pending.add(pool.submit(task));
+                if (pending.size() >= maxInFlight) {
+                    writeBlock(out, await(pending.poll()), listener);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeBlock(out, await(pending.poll()), listener);
+            }
+            writeEnd(out);
+            completed = true;
+        } finally {
+            if (!completed) {
+                cancelAll(pending);
+            }
+        }
+    }
+
+    // Decompresses a framed stream, decoding blocks on 'pool' and writing them
+    // to 'out' in their original order. Byte mode blocks are written as raw
+    // bytes, text mode blocks are encoded with the platform charset.
+    static void decompressFramed(InputStream in, WritableByteChannel out, ExecutorService pool,
+            HuffmanListener listener) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(in, 65536));
+        int[] header = readHeader(dis);
+        int alphabetSize = header[0];
+        int blockSize = header[1];
+        int layout = header[2];
+
+        // Characters the platform charset cannot encode are replaced, as FileWriter does
+        Writer writer = alphabetSize == MAX_CHAR
+                ? Channels.newWriter(out, Charset.defaultCharset().newEncoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE), -1)
+                : null;
+        ByteBuffer byteBuffer = alphabetSize == BYTE_ALPHABET ? ByteBuffer.allocateDirect(65536) : null;
+
+        int maxInFlight = 2 * Runtime.getRuntime().availableProcessors();
+        ArrayDeque<Future<DecodedBlock>> pending = new ArrayDeque<>();
+
+        boolean completed = false;
+        try {
+            int rawLength;
+            while ((rawLength = dis.readInt()) != 0) {
+                checkCancelled();
+                byte[] payload = readPayload(dis, rawLength, blockSize, alphabetSize, layout);
+
+                int length = rawLength;
+                if (alphabetSize == BYTE_ALPHABET && isStored(payload)) {
+                    // Stored bytes need no worker, they are copied out in order
+                    if (payload.length != storedSize(length, alphabetSize)) {
+                        throw new IOException("Corrupt stored block length");
+                    }
+                    pending.add(CompletableFuture.completedFuture(new DecodedBlock(null, payload)));
+                } else {
+                    pending.add(pool.submit(() -> new DecodedBlock(
+                            decodeBlock(payload, length, alphabetSize, layout, listener), null)));
+                }
+                if (pending.size() >= maxInFlight) {
+                    writeSymbols(await(pending.poll()), writer, out, byteBuffer, listener);
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                writeSymbols(await(pending.poll()), writer, out, byteBuffer, listener);
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                cancelAll(pending);
+            }
+        }
+    }
+
+    // Reads the framed header and returns { alphabetSize, blockSize, layout }
+    static int[] readHeader(DataInputStream dis) throws IOException {
+        int layout = layout(dis.readInt());
+        if (layout < 0) {
+            throw new IOException("Not a block-framed compressed file");
+        }
+        int alphabetSize = dis.readInt();
+        int blockSize = dis.readInt();
+        if (alphabetSize != MAX_CHAR && alphabetSize != BYTE_ALPHABET) {
+            throw new IOException("Unsupported alphabet size: " + alphabetSize);
+        }
+        if (blockSize <= 0) {
+            throw new IOException("Invalid block size: " + blockSize);
+        }
+        if (layout == LAYOUT_LZ77 && alphabetSize != BYTE_ALPHABET) {
+            throw new IOException("LZ77 blocks require byte mode");
+        }
+        return new int[] { alphabetSize, blockSize, layout };
+    }
+
+    // Returns the LAYOUT_* a framed magic number stands for, or -1 for any other number
+    private static int layout(int magic) {
+        switch (magic) {
+            case FRAMED_MAGIC:
+                return LAYOUT_SINGLE;
+            case FRAMED_INTERLEAVED_MAGIC:
+                return LAYOUT_INTERLEAVED;
+            case FRAMED_LZ77_MAGIC:
+                return LAYOUT_LZ77;
+            default:
+                return -1;
+        }
+    }
+
+    // Reads the compressed length and payload that follow a non-zero rawLength.
+    // A length the encoder could not have written is rejected before the
+    // payload buffer is allocated.
+    static byte[] readPayload(DataInputStream dis, int rawLength, int blockSize, int alphabetSize, int layout)
+            throws IOException {
+        int compressedLength = dis.readInt();
+        if (rawLength < 0 || rawLength > blockSize || compressedLength < 0
+                || compressedLength > maxPayloadSize(rawLength, alphabetSize, layout)) {
+            throw new IOException("Corrupt block index entry");
+        }
+        byte[] payload = new byte[compressedLength];
+        dis.readFully(payload);
+        return payload;
+    }
+
+    // Reads the alphabet size from the header of a framed file, or returns 0
+    // if the file does not start with a framed magic number
+    static int framedAlphabetSize(Path file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(file.toFile()))) {
+            return layout(dis.readInt()) >= 0 ? dis.readInt() : 0;
+        } catch (EOFException e) {
+            return 0; // Too short to hold a framed header
+        }
+    }
+
+    // Writes decoded characters, narrows byte mode symbols back to bytes, or
+    // copies the bytes of a stored block
+    private static void writeSymbols(DecodedBlock block, Writer writer, WritableByteChannel out,
+            ByteBuffer byteBuffer, HuffmanListener listener) throws IOException {
+        long start = System.nanoTime();
+        if (block.stored != null) {
+            writeFully(out, ByteBuffer.wrap(block.stored, 1, block.stored.length - 1));
+            listener.phaseCompleted(HuffmanListener.Phase.FLUSH, System.nanoTime() - start);
+            return;
+        }
+        char[] symbols = block.symbols;
+        if (writer != null) {
+            writer.write(symbols);
+            listener.phaseCompleted(HuffmanListener.Phase.FLUSH, System.nanoTime() - start);
+            return;
+        }
+        for (int i = 0; i < symbols.length;) {
+            int n = Math.min(byteBuffer.capacity(), symbols.length - i);
+            byteBuffer.clear();
+            for (int j = 0; j < n; j++) {
+                byteBuffer.put((byte) symbols[i + j]);
+            }
+            byteBuffer.flip();
+            writeFully(out, byteBuffer);
+            i += n;
+        }
+        listener.phaseCompleted(HuffmanListener.Phase.FLUSH, System.nanoTime() - start);
+    }
+
+    // Fills 'block' from the reader and returns the number of characters read
+    private static int readBlock(Reader reader, char[] block) throws IOException {
+        int filled = 0;
+        int n;
+        while (filled < block.length && (n = reader.read(block, filled, block.length - filled)) != -1) {
+            filled += n;
+        }
+        return filled;
+    }
+
+    // Writes the framed header for blocks in the given LAYOUT_*
+    static void writeHeader(WritableByteChannel out, int alphabetSize, int blockSize, int layout)
+            throws IOException {
+        int magic = layout == LAYOUT_LZ77 ? FRAMED_LZ77_MAGIC
+                : layout == LAYOUT_INTERLEAVED ? FRAMED_INTERLEAVED_MAGIC : FRAMED_MAGIC;
+        ByteBuffer header = ByteBuffer.allocate(12);
+        header.putInt(magic).putInt(alphabetSize).putInt(blockSize).flip();
+        writeFully(out, header);
+    }
+
+    // Writes one block index entry followed by the block payload
+    static void writeBlock(WritableByteChannel out, int rawLength, byte[] payload) throws IOException {
+        writeBlock(out, rawLength, payload, payload.length);
+    }
+
+    // Writes one block index entry followed by payload[0, payloadLength)
+    static void writeBlock(WritableByteChannel out, int rawLength, byte[] payload, int payloadLength)
+            throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(8);
+        entry.putInt(rawLength).putInt(payloadLength).flip();
+        writeFully(out, entry);
+        writeFully(out, ByteBuffer.wrap(payload, 0, payloadLength));
+    }
+
+    // Writes the marker that follows the last block
+    static void writeEnd(WritableByteChannel out) throws IOException {
+        ByteBuffer end = ByteBuffer.allocate(4);
+        end.putInt(0).flip();
+        writeFully(out, end);
+    }
+
+    // Writes a block finished by a worker
+    private static void writeBlock(WritableByteChannel out, EncodedBlock block, HuffmanListener listener)
+            throws IOException {
+        long start = System.nanoTime();
+        writeBlock(out, block.rawLength, block.payload);
+        listener.phaseCompleted(HuffmanListener.Phase.FLUSH, System.nanoTime() - start);
+    }
+
+    // Writes the whole buffer, looping for channels that accept partial writes
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    // Throws an InterruptedIOException if the current thread has been interrupted,
+    // which is how a running job is cancelled
+    static void checkCancelled() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Cancelled");
+        }
+    }
+
+    // Cancels block tasks that are no longer needed after a failure
+    static void cancelAll(ArrayDeque<? extends Future<?>> pending) {
+        for (Future<?> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+    }
+
+    // Waits for a block task and rethrows its failure as an IOException
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Block processing failed", cause);
+        }
+    }
+}
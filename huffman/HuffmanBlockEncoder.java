@@ -0,0 +1,284 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Encodes block payloads (see HuffmanBlockCodec) with tables that are kept
+// from one block to the next: frequencies, code lengths, codes, the tree
+// builder's heap, the histogram sub-tables, the LZ77 match finder's hash
+// chains and the output buffer. Once they have grown to the largest block
+// seen, encoding a block allocates nothing but the finished payload, and not
+// even that for callers that write from buffer() directly.
+//
+// Between blocks only the table entries of the symbols the previous block
+// used are cleared, so the reset costs as much as the block's distinct
+// symbols, not the alphabet. A block that failed part way leaves the tables
+// marked as unknown and the next one clears them in full, so results never
+// depend on what the encoder did before.
+//
+// An encoder is not thread-safe. HuffmanBlockCodec keeps one per thread.
+class HuffmanBlockEncoder {
+
+    // Frequencies, code lengths and codes over one alphabet, together with
+    // the list of symbols in use that tells reset() what to clear
+    static final class CodeTable {
+        int[] frequencies = new int[0];
+        int[] codeLengths = new int[0];
+        long[] codes = new long[0];
+        private int[] used = new int[0];
+        private int usedCount = 0; // -1 while the entries in use are not known
+
+        // Clears the entries of the previous block and makes room for an
+        // alphabet of 'alphabetSize' symbols. The table counts as unknown
+        // until collectUsed() has listed the new block's symbols.
+        void reset(int alphabetSize) {
+            if (frequencies.length < alphabetSize) {
+                frequencies = new int[alphabetSize];
+                codeLengths = new int[alphabetSize];
+                codes = new long[alphabetSize];
+                used = new int[alphabetSize];
+            } else if (usedCount < 0) {
+                Arrays.fill(frequencies, 0);
+                Arrays.fill(codeLengths, 0);
+                Arrays.fill(codes, 0);
+            } else {
+                for (int i = 0; i < usedCount; i++) {
+                    int symbol = used[i];
+                    frequencies[symbol] = 0;
+                    codeLengths[symbol] = 0;
+                    codes[symbol] = 0;
+                }
+            }
+            usedCount = -1;
+        }
+
+        // Lists the symbols with a non-zero frequency and returns their number
+        int collectUsed(int alphabetSize) {
+            int count = 0;
+            for (int i = 0; i < alphabetSize; i++) {
+                if (frequencies[i] != 0) {
+                    used[count++] = i;
+                }
+            }
+            usedCount = count;
+            return count;
+        }
+
+        // Builds the code lengths of the Huffman tree over the frequencies,
+        // limited to 'maxCodeLength' bits, and assigns canonical codes to them.
+        // At least one frequency must be non-zero.
+        void build(HuffmanTreeBuilder treeBuilder, int alphabetSize, int maxCodeLength,
+                HuffmanListener listener) {
+            treeBuilder.codeLengths(frequencies, alphabetSize, codeLengths);
+            long optimalBits = CanonicalHuffman.encodedBits(frequencies, codeLengths, alphabetSize);
+            long limitedBits = optimalBits;
+            if (CanonicalHuffman.limitCodeLengths(frequencies, codeLengths, alphabetSize, maxCodeLength)) {
+                limitedBits = CanonicalHuffman.encodedBits(frequencies, codeLengths, alphabetSize);
+            }
+            listener.codeTableBuilt(optimalBits, limitedBits);
+            CanonicalHuffman.assignCodes(codeLengths, alphabetSize, codes);
+        }
+    }
+
+    // A ByteArrayOutputStream whose array can be read and filled in place
+    static final class PayloadBuffer extends ByteArrayOutputStream {
+        PayloadBuffer(int size) {
+            super(size);
+        }
+
+        // Returns the array holding the first size() bytes
+        byte[] array() {
+            return buf;
+        }
+
+        // Makes room for 'n' more bytes and returns the array to put them
+        // in, starting at size(); skip(n) then adds them to the buffer
+        byte[] reserve(int n) {
+            if (count + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(2 * buf.length, count + n));
+            }
+            return buf;
+        }
+
+        void skip(int n) {
+            count += n;
+        }
+    }
+
+    final CodeTable literals = new CodeTable(); // Block symbols, or LZ77 literals and lengths
+    final CodeTable distances = new CodeTable(); // LZ77 distances
+    final HuffmanTreeBuilder treeBuilder = new HuffmanTreeBuilder();
+    final int[][] subTables = HuffmanHistogram.newSubTables();
+    final PayloadBuffer bytes = new PayloadBuffer(8192);
+    final DataOutputStream dos = new DataOutputStream(bytes);
+    final HuffmanBitWriter bitWriter = new HuffmanBitWriter(bytes);
+
+    private final PayloadBuffer[] streams = new PayloadBuffer[HuffmanInterleavedDecoder.STREAMS];
+    private final HuffmanBitWriter[] streamWriters = new HuffmanBitWriter[HuffmanInterleavedDecoder.STREAMS];
+    private char[] widened = new char[0]; // Byte blocks widened to symbols
+    private char[] tokens = new char[0]; // LZ77 literal and length symbols
+    private int[] matches = new int[0]; // LZ77 length and distance of every match
+    private int[] hashHeads; // LZ77 latest position of every hash
+    private int[] hashChain = new int[0]; // LZ77 previous position with the same hash
+
+    // Encodes 'length' symbols of 'data' as set out by 'options', reporting
+    // the time of each phase to 'listener'. Returns the payload size; the
+    // payload is the start of buffer() until the next call.
+    int encode(char[] data, int length, int alphabetSize, HuffmanBlockOptions options, HuffmanListener listener)
+            throws IOException {
+        bytes.reset();
+        bitWriter.reset();
+        if (options.layout(alphabetSize) == HuffmanBlockCodec.LAYOUT_LZ77) {
+            if (!HuffmanLz77.encodeBlock(this, data, length, options, listener)) {
+                store(data, length, alphabetSize);
+            }
+            return bytes.size();
+        }
+
+        // Count the block's own symbol frequencies
+        long start = System.nanoTime();
+        literals.reset(alphabetSize);
+        HuffmanHistogram.count(data, 0, length, literals.frequencies, subTables);
+        int uniqueCount = literals.collectUsed(alphabetSize);
+        long counted = System.nanoTime();
+        listener.phaseCompleted(HuffmanListener.Phase.FREQUENCY_COUNT, counted - start);
+
+        // Skip the tree and the bitstream if even the entropy bound, plus about
+        // two bytes of code lengths per symbol, saves too little
+        long estimatedBytes = (HuffmanBlockCodec.entropyBits(literals.frequencies, alphabetSize, length) + 7) / 8
+                + 2L * uniqueCount;
+        if (!HuffmanBlockCodec.worthCoding(estimatedBytes, length, alphabetSize, options)) {
+            store(data, length, alphabetSize);
+            return bytes.size();
+        }
+
+        literals.build(treeBuilder, alphabetSize, options.maxCodeLength, listener);
+        CanonicalHuffman.writeCodeLengths(dos, literals.codeLengths, alphabetSize);
+        long built = System.nanoTime();
+        listener.phaseCompleted(HuffmanListener.Phase.TREE_BUILD, built - counted);
+
+        if (uniqueCount > 1 && options.interleaved) {
+            writeInterleaved(data, length);
+        } else if (uniqueCount > 1) {
+            writeCodes(bitWriter, data, 0, length);
+            bitWriter.finish();
+        }
+        listener.phaseCompleted(HuffmanListener.Phase.ENCODE, System.nanoTime() - built);
+        if (!HuffmanBlockCodec.keepCoded(bytes.size(), length, alphabetSize, options)) {
+            store(data, length, alphabetSize);
+        }
+        return bytes.size();
+    }
+
+    // Encodes the remaining bytes of 'block', widened to byte mode symbols
+    int encode(ByteBuffer block, HuffmanBlockOptions options, HuffmanListener listener) throws IOException {
+        int length = block.remaining();
+        int start = block.position();
+        if (widened.length < length) {
+            widened = new char[length];
+        }
+        char[] data = widened;
+        for (int i = 0; i < length; i++) {
+            data[i] = (char) (block.get(start + i) & 0xFF);
+        }
+        return encode(data, length, HuffmanBlockCodec.BYTE_ALPHABET, options, listener);
+    }
+
+    // Returns the array holding the payload of the last block
+    byte[] buffer() {
+        return bytes.array();
+    }
+
+    // Returns a copy of the payload of the last block
+    byte[] toPayload() {
+        return bytes.toByteArray();
+    }
+
+    // Replaces the buffer's contents with the stored payload of data[0, length)
+    void store(char[] data, int length, int alphabetSize) {
+        bytes.reset();
+        int size = (int) HuffmanBlockCodec.storedSize(length, alphabetSize);
+        byte[] payload = bytes.reserve(size);
+        payload[0] = (byte) HuffmanBlockCodec.STORED_MARKER;
+        if (alphabetSize == HuffmanBlockCodec.BYTE_ALPHABET) {
+            for (int i = 0; i < length; i++) {
+                payload[1 + i] = (byte) data[i];
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                payload[1 + 2 * i] = (byte) (data[i] >>> 8);
+                payload[2 + 2 * i] = (byte) data[i];
+            }
+        }
+        bytes.skip(size);
+    }
+
+    // Returns a scratch array for at least 'length' LZ77 symbols
+    char[] tokens(int length) {
+        if (tokens.length < length) {
+            tokens = new char[length];
+        }
+        return tokens;
+    }
+
+    // Returns a scratch array for the length and distance of 'count' matches
+    int[] matches(int count) {
+        if (matches.length < 2 * count) {
+            matches = new int[2 * count];
+        }
+        return matches;
+    }
+
+    // Returns the hash heads of the match finder, all set to -1
+    int[] hashHeads(int size) {
+        if (hashHeads == null || hashHeads.length != size) {
+            hashHeads = new int[size];
+        }
+        Arrays.fill(hashHeads, -1);
+        return hashHeads;
+    }
+
+    // Returns the hash chain of the match finder. Its old entries need no
+    // clearing: a slot is always written before it is read.
+    int[] hashChain(int size) {
+        if (hashChain.length < size) {
+            hashChain = new int[size];
+        }
+        return hashChain;
+    }
+
+    // Writes the codes of data[from, to)
+    private void writeCodes(HuffmanBitWriter writer, char[] data, int from, int to) throws IOException {
+        long[] codes = literals.codes;
+        int[] codeLengths = literals.codeLengths;
+        for (int i = from; i < to; i++) {
+            char ch = data[i];
+            writer.write(codes[ch], codeLengths[ch]);
+        }
+    }
+
+    // Writes the block as HuffmanInterleavedDecoder.STREAMS bitstreams, one per
+    // segment of the data, preceded by the byte lengths of all but the last
+    private void writeInterleaved(char[] data, int length) throws IOException {
+        int segment = HuffmanInterleavedDecoder.segmentLength(length);
+        for (int k = 0; k < streams.length; k++) {
+            if (streams[k] == null) {
+                streams[k] = new PayloadBuffer(segment / 2 + 16);
+                streamWriters[k] = new HuffmanBitWriter(streams[k]);
+            }
+            streams[k].reset();
+            streamWriters[k].reset();
+            writeCodes(streamWriters[k], data, Math.min(length, k * segment), Math.min(length, (k + 1) * segment));
+            streamWriters[k].finish();
+        }
+        for (int k = 0; k < streams.length - 1; k++) {
+            CanonicalHuffman.writeVarInt(dos, streams[k].size());
+        }
+        for (PayloadBuffer stream : streams) {
+            stream.writeTo(bytes);
+        }
+    }
+}
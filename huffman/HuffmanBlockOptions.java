@@ -0,0 +1,107 @@
+package huffman;
+
+// How the block formats encode: the longest code allowed, whether each block
+// is split into interleaved bitstreams, the LZ77 stage in front of the
+// Huffman coder, and when a block is stored instead of coded. Immutable, so
+// it can be shared by all the worker threads of a job.
+public final class HuffmanBlockOptions {
+
+    // Default limit on the length of a code, in bits
+    public static final int DEFAULT_MAX_CODE_LENGTH = CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH;
+
+    // Default LZ77 effort level and window when the stage is enabled
+    public static final int DEFAULT_LZ_LEVEL = HuffmanLz77.DEFAULT_LEVEL;
+    public static final int DEFAULT_LZ_WINDOW_BITS = HuffmanLz77.DEFAULT_WINDOW_BITS;
+
+    // Default least saving, in percent, for which a block is coded rather than stored
+    public static final double DEFAULT_MIN_SAVING_PERCENT = 1;
+
+    public static final HuffmanBlockOptions DEFAULT = new HuffmanBlockOptions(DEFAULT_MAX_CODE_LENGTH, false);
+
+    final int maxCodeLength; // Longest code the encoder may assign
+    final boolean interleaved; // Encode every block as HuffmanInterleavedDecoder.STREAMS bitstreams
+    final int lzLevel; // Match finder effort, 1-9, or 0 to code the bytes as they are
+    final int lzWindowBits; // log2 of how far back a match may start
+    final double minSavingPercent; // Blocks estimated to shrink by less are stored; 0 never stores
+
+    // Creates options whose codes are at most maxCodeLength bits long.
+    // Shorter limits keep the decoder's tables small at some cost in
+    // compression; the limit is raised where needed to give every used
+    // symbol a code. If 'interleaved' is set, every block is split into four
+    // bitstreams which the decoder reads side by side, trading a few bytes
+    // per block for faster decoding on each core
+    public HuffmanBlockOptions(int maxCodeLength, boolean interleaved) {
+        this(maxCodeLength, interleaved, 0, DEFAULT_LZ_WINDOW_BITS, DEFAULT_MIN_SAVING_PERCENT);
+    }
+
+    // Creates options that also run byte mode blocks through an LZ77 match
+    // finder first, so repeated strings are coded as references to their
+    // previous occurrence. 'lzLevel' goes from 1 (fastest) to 9 (smallest
+    // output), 0 turns the stage off; matches reach back up to
+    // 2^lzWindowBits bytes (10-24) within a block. Text blocks are not
+    // affected. The stage replaces interleaving, so the two cannot be
+    // combined. A block is stored as it is when the entropy of its symbols
+    // says coding would shrink it by less than minSavingPercent (0-100);
+    // 0 turns stored blocks off, so every block is Huffman coded
+    public HuffmanBlockOptions(int maxCodeLength, boolean interleaved, int lzLevel, int lzWindowBits,
+            double minSavingPercent) {
+        if (maxCodeLength <= 0 || maxCodeLength > CanonicalHuffman.MAX_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length limit must be between 1 and "
+                    + CanonicalHuffman.MAX_CODE_LENGTH + ": " + maxCodeLength);
+        }
+        if (lzLevel < 0 || lzLevel > HuffmanLz77.MAX_LEVEL) {
+            throw new IllegalArgumentException("LZ77 level must be between 0 and " + HuffmanLz77.MAX_LEVEL + ": "
+                    + lzLevel);
+        }
+        if (lzWindowBits < HuffmanLz77.MIN_WINDOW_BITS || lzWindowBits > HuffmanLz77.MAX_WINDOW_BITS) {
+            throw new IllegalArgumentException("LZ77 window bits must be between " + HuffmanLz77.MIN_WINDOW_BITS
+                    + " and " + HuffmanLz77.MAX_WINDOW_BITS + ": " + lzWindowBits);
+        }
+        if (!(minSavingPercent >= 0 && minSavingPercent <= 100)) {
+            throw new IllegalArgumentException("Minimum saving must be between 0 and 100 percent: "
+                    + minSavingPercent);
+        }
+        if (interleaved && lzLevel > 0) {
+            throw new IllegalArgumentException("Interleaved streams cannot be combined with the LZ77 stage");
+        }
+        this.maxCodeLength = maxCodeLength;
+        this.interleaved = interleaved;
+        this.lzLevel = lzLevel;
+        this.lzWindowBits = lzWindowBits;
+        this.minSavingPercent = minSavingPercent;
+    }
+
+    // Returns the longest code the encoder assigns, in bits
+    public int maxCodeLength() {
+        return maxCodeLength;
+    }
+
+    // Returns true if blocks are written as interleaved bitstreams
+    public boolean interleaved() {
+        return interleaved;
+    }
+
+    // Returns the LZ77 effort level, 0 if the stage is off
+    public int lzLevel() {
+        return lzLevel;
+    }
+
+    // Returns log2 of the LZ77 window in bytes
+    public int lzWindowBits() {
+        return lzWindowBits;
+    }
+
+    // Returns the least saving, in percent, for which a block is coded rather than stored
+    public double minSavingPercent() {
+        return minSavingPercent;
+    }
+
+    // Returns the block layout these options produce for 'alphabetSize'.
+    // The LZ77 stage only applies to byte mode
+    int layout(int alphabetSize) {
+        if (lzLevel > 0 && alphabetSize == HuffmanBlockCodec.BYTE_ALPHABET) {
+            return HuffmanBlockCodec.LAYOUT_LZ77;
+        }
+        return interleaved ? HuffmanBlockCodec.LAYOUT_INTERLEAVED : HuffmanBlockCodec.LAYOUT_SINGLE;
+    }
+}
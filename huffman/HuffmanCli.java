@@ -0,0 +1,271 @@
+package huffman;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+// Command-line front end for scripts and pipelines:
+//
+//   java huffman.HuffmanCli compress   [-b blockSize] [-l maxCodeLength] [-4]
+//                                      [-z level] [-w windowBits] [-s minSaving%]
+//                                      [-t] [-d dictionary] [input|-] [output|-]
+//   java huffman.HuffmanCli decompress [-d dictionary] [input|-] [output|-]
+//   java huffman.HuffmanCli train      [-l maxCodeLength] [-t] dictionary sample...
+//   java huffman.HuffmanCli archive    [-b blockSize] [-l maxCodeLength] [-4]
+//                                      [-z level] [-w windowBits] [-s minSaving%]
+//                                      [-j threads] directory archive
+//   java huffman.HuffmanCli list       archive
+//   java huffman.HuffmanCli extract    archive targetDirectory [entry]
+//
+// A missing file name or "-" stands for stdin/stdout, so the tool can sit in
+// the middle of a pipe. Input is read in a single pass, block by block. Data
+// is handled as raw bytes unless -t selects text mode (platform charset).
+// -l limits the length of a code in bits (15 by default). -4 splits every
+// block into four interleaved bitstreams, which decode faster. -z runs byte
+// mode blocks through an LZ77 match finder first, from level 1 (fastest) to
+// 9 (smallest); -w sets its window to 2^windowBits bytes (16 by default).
+// Blocks expected to shrink by less than -s percent (1 by default) are stored.
+// The archive commands pack a directory tree into one indexed archive, with
+// -j files compressed at once, and list or extract its entries.
+// train builds a dictionary from sample files; with -d, compress and
+// decompress treat the whole input as one record coded with that dictionary.
+public final class HuffmanCli {
+
+    private HuffmanCli() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+
+        // Step 1: Parse the command and its options
+        String command = args[0];
+        int blockSize = HuffmanCodec.DEFAULT_BLOCK_SIZE;
+        int maxCodeLength = HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean text = false;
+        boolean interleaved = false;
+        int lzLevel = 0;
+        int lzWindowBits = HuffmanBlockOptions.DEFAULT_LZ_WINDOW_BITS;
+        double minSavingPercent = HuffmanBlockOptions.DEFAULT_MIN_SAVING_PERCENT;
+        String dictionaryName = null;
+        List<String> names = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-b") && i + 1 < args.length) {
+                blockSize = parseOption(args[++i], Integer::parseInt);
+            } else if (arg.equals("-l") && i + 1 < args.length) {
+                maxCodeLength = parseOption(args[++i], Integer::parseInt);
+            } else if (arg.equals("-z") && i + 1 < args.length) {
+                lzLevel = parseOption(args[++i], Integer::parseInt);
+            } else if (arg.equals("-w") && i + 1 < args.length) {
+                lzWindowBits = parseOption(args[++i], Integer::parseInt);
+            } else if (arg.equals("-s") && i + 1 < args.length) {
+                minSavingPercent = parseOption(args[++i], Double::parseDouble);
+            } else if (arg.equals("-j") && i + 1 < args.length) {
+                threads = parseOption(args[++i], Integer::parseInt);
+            } else if (arg.equals("-d") && i + 1 < args.length) {
+                dictionaryName = args[++i];
+            } else if (arg.equals("-4")) {
+                interleaved = true;
+            } else if (arg.equals("-t") || arg.equals("--text")) {
+                text = true;
+            } else {
+                names.add(arg);
+            }
+        }
+        boolean valid;
+        switch (command) {
+            case "compress":
+            case "decompress":
+                valid = names.size() <= 2;
+                break;
+            case "archive":
+                valid = names.size() == 2;
+                break;
+            case "list":
+                valid = names.size() == 1;
+                break;
+            case "train":
+                valid = names.size() >= 2;
+                break;
+            case "extract":
+                valid = names.size() == 2 || names.size() == 3;
+                break;
+            default:
+                valid = false;
+        }
+        if (!valid || blockSize <= 0 || threads <= 0) {
+            usage();
+            return;
+        }
+        HuffmanBlockOptions options;
+        try {
+            options = new HuffmanBlockOptions(maxCodeLength, interleaved, lzLevel, lzWindowBits, minSavingPercent);
+        } catch (IllegalArgumentException e) {
+            usage();
+            return;
+        }
+
+        // Step 2: Run the codec between the chosen files or standard streams,
+        // or on the archive
+        HuffmanCodec codec = new HuffmanCodec(blockSize, options, ForkJoinPool.commonPool(), HuffmanListener.NONE);
+        if (command.equals("archive") || command.equals("list") || command.equals("extract")) {
+            try {
+                runArchive(command, names, new HuffmanArchive(codec, threads));
+            } catch (IOException e) {
+                System.err.println("huffman: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        if (command.equals("train")) {
+            try {
+                train(names, text, maxCodeLength);
+            } catch (IOException | IllegalArgumentException e) {
+                System.err.println("huffman: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        String inputName = names.size() > 0 ? names.get(0) : "-";
+        String outputName = names.size() > 1 ? names.get(1) : "-";
+        try (InputStream in = openInput(inputName); OutputStream out = openOutput(outputName)) {
+            if (dictionaryName != null) {
+                runDictionary(command, HuffmanDictionary.load(Paths.get(dictionaryName)), in, out);
+            } else if (command.equals("compress") && text) {
+                codec.compress(new InputStreamReader(in, Charset.defaultCharset()), out);
+            } else if (command.equals("compress")) {
+                codec.compress(in, out);
+            } else {
+                codec.decompress(in, out);
+            }
+        } catch (IOException e) {
+            System.err.println("huffman: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // Trains a dictionary on the sample files and saves it under the first name
+    private static void train(List<String> names, boolean text, int maxCodeLength) throws IOException {
+        HuffmanDictionary dictionary;
+        if (text) {
+            List<String> samples = new ArrayList<>();
+            for (String name : names.subList(1, names.size())) {
+                samples.add(new String(Files.readAllBytes(Paths.get(name)), Charset.defaultCharset()));
+            }
+            dictionary = HuffmanDictionary.trainText(samples, maxCodeLength);
+        } else {
+            List<byte[]> samples = new ArrayList<>();
+            for (String name : names.subList(1, names.size())) {
+                samples.add(Files.readAllBytes(Paths.get(name)));
+            }
+            dictionary = HuffmanDictionary.train(samples, maxCodeLength);
+        }
+        dictionary.save(Paths.get(names.get(0)));
+        System.err.printf("huffman: dictionary %08x%n", dictionary.id());
+    }
+
+    // Compresses or decompresses the whole input as one dictionary record
+    private static void runDictionary(String command, HuffmanDictionary dictionary, InputStream in, OutputStream out)
+            throws IOException {
+        byte[] input = in.readAllBytes();
+        if (command.equals("compress") && dictionary.isText()) {
+            out.write(dictionary.compress(new String(input, Charset.defaultCharset())));
+        } else if (command.equals("compress")) {
+            out.write(dictionary.compress(input));
+        } else if (dictionary.isText()) {
+            out.write(dictionary.decompressText(input).getBytes(Charset.defaultCharset()));
+        } else {
+            out.write(dictionary.decompress(input));
+        }
+    }
+
+    private static void runArchive(String command, List<String> names, HuffmanArchive archive) throws IOException {
+        Path archiveFile = Paths.get(names.get(command.equals("archive") ? 1 : 0));
+        switch (command) {
+            case "archive":
+                archive.create(Paths.get(names.get(0)), archiveFile);
+                break;
+            case "list":
+                for (HuffmanArchive.Entry entry : HuffmanArchive.list(archiveFile)) {
+                    System.out.printf("%12d %12d  %08x  %s%n", entry.originalSize(), entry.compressedSize(),
+                            entry.crc(), entry.name());
+                }
+                break;
+            default:
+                Path target = Paths.get(names.get(1));
+                if (names.size() == 3) {
+                    Path file = target.resolve(names.get(2));
+                    if (file.getParent() != null) {
+                        Files.createDirectories(file.getParent());
+                    }
+                    archive.extract(archiveFile, names.get(2), file);
+                } else {
+                    archive.extractAll(archiveFile, target);
+                }
+        }
+    }
+
+    private static InputStream openInput(String name) throws IOException {
+        if (name.equals("-")) {
+            return new FilterInputStream(System.in) {
+                @Override
+                public void close() {
+                    // Leave stdin open
+                }
+            };
+        }
+        return new FileInputStream(name);
+    }
+
+    private static OutputStream openOutput(String name) throws IOException {
+        if (name.equals("-")) {
+            return new BufferedOutputStream(new FilterOutputStream(System.out) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    flush(); // Leave stdout open
+                }
+            }, 65536);
+        }
+        Path path = Paths.get(name);
+        return new BufferedOutputStream(new FileOutputStream(path.toFile()), 65536);
+    }
+
+    // Parses the value of a numeric option, or prints the usage and exits if it is malformed
+    private static <T> T parseOption(String value, Function<String, T> parser) {
+        try {
+            return parser.apply(value);
+        } catch (NumberFormatException e) {
+            usage();
+            throw e; // Not reached, usage() exits
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java huffman.HuffmanCli compress [-b blockSize] [-l maxCodeLength] [-4]");
+        System.err.println("           [-z level] [-w windowBits] [-s minSaving%] [-t] [-d dictionary]");
+        System.err.println("           [input|-] [output|-]");
+        System.err.println("       java huffman.HuffmanCli decompress [-d dictionary] [input|-] [output|-]");
+        System.err.println("       java huffman.HuffmanCli train [-l maxCodeLength] [-t] dictionary sample...");
+        System.err.println("       java huffman.HuffmanCli archive [-b blockSize] [-l maxCodeLength] [-4]");
+        System.err.println("           [-z level] [-w windowBits] [-s minSaving%] [-j threads]");
+        System.err.println("           directory archive");
+        System.err.println("       java huffman.HuffmanCli list archive");
+        System.err.println("       java huffman.HuffmanCli extract archive targetDirectory [entry]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,223 @@
+package huffman;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+// Headless entry point to the Huffman codec.
+//
+// A codec only holds its configuration (block size, code length limit,
+// stream layout, LZ77 stage, stored block threshold and worker pool), so
+// one instance can be shared by any number of threads. Every call keeps its
+// tables to itself. Streams, byte buffers and files compressed here use the
+// block-framed byte format unless a text format is requested explicitly.
+//
+// The block formats read their input once: each block is histogrammed and
+// encoded while it is still in memory, so pipes and sockets can be
+// compressed. Only TEXT_SINGLE_STREAM needs a second pass over large files.
+//
+// Progress and phase timings are reported to the codec's listener. A job is
+// cancelled by interrupting the thread that runs it; the call then ends
+// with an InterruptedIOException.
+public final class HuffmanCodec {
+
+    // Formats that files can be compressed into
+    public enum Format {
+        // Raw bytes in independent blocks, 256-symbol alphabet, one pass
+        BINARY_BLOCKS,
+        // Characters (platform charset) in independent blocks, one pass
+        TEXT_BLOCKS,
+        // Characters in one stream with a single code table, two passes
+        TEXT_SINGLE_STREAM
+    }
+
+    // Default number of symbols per block
+    public static final int DEFAULT_BLOCK_SIZE = HuffmanBlockCodec.DEFAULT_BLOCK_SIZE;
+
+    private final int blockSize;
+    private final HuffmanBlockOptions options;
+    private final ExecutorService pool;
+    private final HuffmanListener listener;
+
+    // Creates a codec with the default block size that runs on the common pool
+    public HuffmanCodec() {
+        this(DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    // Creates a codec that splits input into blocks of blockSize symbols and encodes them on pool
+    public HuffmanCodec(int blockSize, ExecutorService pool) {
+        this(blockSize, pool, HuffmanListener.NONE);
+    }
+
+    // Creates a codec that also reports progress and phase timings to listener
+    public HuffmanCodec(int blockSize, ExecutorService pool, HuffmanListener listener) {
+        this(blockSize, HuffmanBlockOptions.DEFAULT, pool, listener);
+    }
+
+    // Creates a codec that encodes the blocks of the block formats as set out
+    // by options: code length limit, interleaving, LZ77 stage and stored blocks
+    public HuffmanCodec(int blockSize, HuffmanBlockOptions options, ExecutorService pool, HuffmanListener listener) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        if (options == null) {
+            throw new NullPointerException("options");
+        }
+        if (pool == null) {
+            throw new NullPointerException("pool");
+        }
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+        this.blockSize = blockSize;
+        this.options = options;
+        this.pool = pool;
+        this.listener = listener;
+    }
+
+    // Returns the number of symbols per block
+    public int blockSize() {
+        return blockSize;
+    }
+
+    // Returns how the codec encodes blocks
+    public HuffmanBlockOptions options() {
+        return options;
+    }
+
+    // Compresses everything from in to out. Neither stream is closed
+    public void compress(InputStream in, OutputStream out) throws IOException {
+        HuffmanBlockCodec.compressFramed(Channels.newChannel(in), Channels.newChannel(out), blockSize, options, pool,
+                listener);
+        out.flush();
+    }
+
+    // Compresses the characters from in in text mode, in a single pass.
+    // Neither end is closed. Only phase timings are reported, as the bytes
+    // behind a reader are not visible
+    public void compress(Reader in, OutputStream out) throws IOException {
+        HuffmanBlockCodec.compressFramed(in, Channels.newChannel(out), blockSize, options, pool, listener);
+        out.flush();
+    }
+
+    // Decompresses a block-framed stream from in to out. Text mode data is
+    // written in the platform charset. Neither stream is closed
+    public void decompress(InputStream in, OutputStream out) throws IOException {
+        HuffmanBlockCodec.decompressFramed(new ProgressInputStream(in, listener), Channels.newChannel(out), pool,
+                listener);
+        out.flush();
+    }
+
+    // Returns a stream that compresses the bytes written to it into out with
+    // this codec's block size and options. Blocks are encoded on the
+    // writing thread, one at a time
+    public HuffmanOutputStream newOutputStream(OutputStream out) {
+        return new HuffmanOutputStream(out, blockSize, options);
+    }
+
+    // Compresses the remaining bytes of src into a new buffer; src's position is not changed
+    public ByteBuffer compress(ByteBuffer src) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(src.remaining() / 2 + 64);
+        HuffmanBlockCodec.compressFramed(src, Channels.newChannel(bytes), blockSize, options, pool, listener);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    // Decompresses the remaining bytes of src into a new buffer; src's position is not changed
+    public ByteBuffer decompress(ByteBuffer src) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(src.remaining() * 2 + 64);
+        HuffmanBlockCodec.decompressFramed(new ProgressInputStream(newInputStream(src.duplicate()), listener),
+                Channels.newChannel(bytes), pool, listener);
+        return ByteBuffer.wrap(bytes.toByteArray());
+    }
+
+    // Compresses a file into the given format. Binary input is memory-mapped
+    public void compressFile(Path inputFile, Path outputFile, Format format) throws IOException {
+        switch (format) {
+            case BINARY_BLOCKS:
+                try (FileChannel in = FileChannel.open(inputFile, StandardOpenOption.READ);
+                        FileChannel out = openForWriting(outputFile)) {
+                    HuffmanBlockCodec.compressFramed(in, out, blockSize, options, pool, listener);
+                }
+                break;
+            case TEXT_BLOCKS:
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new ProgressInputStream(new FileInputStream(inputFile.toFile()), listener),
+                        Charset.defaultCharset()), 65536);
+                        FileChannel out = openForWriting(outputFile)) {
+                    HuffmanBlockCodec.compressFramed(reader, out, blockSize, options, pool, listener);
+                }
+                break;
+            case TEXT_SINGLE_STREAM:
+                HuffmanSingleStream.compress(inputFile, outputFile, options.maxCodeLength, pool, listener);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown format: " + format);
+        }
+    }
+
+    // Decompresses a file written by compressFile in any format
+    public void decompressFile(Path inputFile, Path outputFile) throws IOException {
+        if (detectFormat(inputFile) == Format.TEXT_SINGLE_STREAM) {
+            HuffmanSingleStream.decompress(inputFile, outputFile, listener);
+            return;
+        }
+        try (InputStream in = new ProgressInputStream(new FileInputStream(inputFile.toFile()), listener);
+                FileChannel out = openForWriting(outputFile)) {
+            HuffmanBlockCodec.decompressFramed(in, out, pool, listener);
+        }
+    }
+
+    // Returns the format of a compressed file from its header
+    public static Format detectFormat(Path compressedFile) throws IOException {
+        int alphabetSize = HuffmanBlockCodec.framedAlphabetSize(compressedFile);
+        if (alphabetSize == HuffmanBlockCodec.BYTE_ALPHABET) {
+            return Format.BINARY_BLOCKS;
+        }
+        if (alphabetSize == HuffmanBlockCodec.MAX_CHAR) {
+            return Format.TEXT_BLOCKS;
+        }
+        try (DataInputStream dis = new DataInputStream(new FileInputStream(compressedFile.toFile()))) {
+            if (dis.readInt() == HuffmanSingleStream.SINGLE_STREAM_MAGIC) {
+                return Format.TEXT_SINGLE_STREAM;
+            }
+        } catch (EOFException e) {
+            // Too short for any header
+        }
+        throw new IOException("Not a compressed file: " + compressedFile);
+    }
+
+    // Opens a file for writing, replacing any previous content
+    private static FileChannel openForWriting(Path file) throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    // Reads the remaining bytes of a buffer as a stream
+    private static InputStream newInputStream(ByteBuffer buffer) {
+        return new InputStream() {
+            @Override
+            public int read() {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!buffer.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, buffer.remaining());
+                buffer.get(b, off, n);
+                return n;
+            }
+        };
+    }
+}
@@ -0,0 +1,110 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Lookup table that resolves whole canonical Huffman codes from several bits
+// at a time. It is built from code lengths only, without a tree or a heap.
+class HuffmanDecodeTable {
+    static final int PRIMARY_BITS = 11; // Number of bits resolved by a single lookup
+
+    // Each entry is (symbol << 4) | codeLength for codes of up to PRIMARY_BITS
+    // bits, or -1 when the code is longer (or the prefix is not a valid code)
+    final int[] entries = new int[1 << PRIMARY_BITS];
+
+    // Per code length: one past the last canonical code of that length, the
+    // first code of that length, and where its symbols start in sortedSymbols
+    final long[] limit = new long[CanonicalHuffman.MAX_CODE_LENGTH + 1];
+    final long[] firstCode = new long[CanonicalHuffman.MAX_CODE_LENGTH + 1];
+    final int[] symbolBase = new int[CanonicalHuffman.MAX_CODE_LENGTH + 1];
+    final int[] sortedSymbols; // Symbols in canonical (length, symbol) order
+    final int maxLength; // Longest code in use
+    final int singleSymbol; // The only symbol in use, or -1 if there are several
+
+    // Builds the table from the code length of every symbol of the alphabet
+    HuffmanDecodeTable(int[] codeLengths, int alphabetSize) throws IOException {
+        int[] lengthCount = new int[CanonicalHuffman.MAX_CODE_LENGTH + 1];
+        int used = 0;
+        int longest = 0;
+        int lastSymbol = -1;
+        for (int i = 0; i < alphabetSize; i++) {
+            int length = codeLengths[i];
+            if (length != 0) {
+                lengthCount[length]++;
+                used++;
+                longest = Math.max(longest, length);
+                lastSymbol = i;
+            }
+        }
+        maxLength = longest;
+        singleSymbol = used == 1 ? lastSymbol : -1;
+
+        // Reject lengths that describe more codes than the code space holds, or
+        // that leave part of it unused (allowed only for a lone symbol's code)
+        long available = 1;
+        for (int length = 1; length <= maxLength; length++) {
+            available = (available << 1) - lengthCount[length];
+            if (available < 0) {
+                throw new IOException("Code lengths do not form a valid prefix code");
+            }
+        }
+        if (used > 1 && available != 0) {
+            throw new IOException("Code lengths do not form a complete prefix code");
+        }
+
+        // Canonical numbering: first code and symbol offset of every length
+        long[] nextCode = new long[CanonicalHuffman.MAX_CODE_LENGTH + 1];
+        long code = 0;
+        int base = 0;
+        for (int length = 1; length <= maxLength; length++) {
+            code = (code + lengthCount[length - 1]) << 1;
+            firstCode[length] = code;
+            nextCode[length] = code;
+            limit[length] = code + lengthCount[length];
+            symbolBase[length] = base;
+            base += lengthCount[length];
+        }
+
+        sortedSymbols = new int[used];
+        int[] fill = symbolBase.clone();
+        Arrays.fill(entries, -1);
+        for (int i = 0; i < alphabetSize; i++) {
+            int length = codeLengths[i];
+            if (length == 0) {
+                continue;
+            }
+            sortedSymbols[fill[length]++] = i;
+            long symbolCode = nextCode[length]++;
+
+            // Every index that starts with this code decodes to the same symbol
+            if (length <= PRIMARY_BITS) {
+                int shift = PRIMARY_BITS - length;
+                int start = (int) symbolCode << shift;
+                int entry = (i << 4) | length;
+                for (int j = start; j < start + (1 << shift); j++) {
+                    entries[j] = entry;
+                }
+            }
+        }
+    }
+
+    // Resolves a code longer than PRIMARY_BITS from the most significant bits
+    // of 'bits', of which 'available' are valid. Returns (symbol << 8) | length,
+    // or -1 if more bits are needed.
+    int decodeLong(long bits, int available) throws IOException {
+        for (int length = PRIMARY_BITS + 1; length <= maxLength; length++) {
+            if (length > available) {
+                return -1;
+            }
+            long code = bits >>> (64 - length);
+            if (code < limit[length]) {
+                long index = code - firstCode[length];
+                if (index < 0) {
+                    break;
+                }
+                return (sortedSymbols[symbolBase[length] + (int) index] << 8) | length;
+            }
+        }
+        throw new IOException("Invalid Huffman code in compressed data");
+    }
+}
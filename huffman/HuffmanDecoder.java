@@ -0,0 +1,133 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+// Incremental table-driven decoder for one Huffman bitstream. Each call to
+// read resolves a whole symbol per table lookup and keeps its bit position
+// between calls, so output can be produced in chunks of any size.
+//
+// A stream may use an escape symbol (see HuffmanDictionary): its code is
+// followed by the actual symbol as a plain escapeBits-bit number.
+class HuffmanDecoder {
+    private final HuffmanDecodeTable table;
+    private final int escapeSymbol; // -1 if the stream has no escape symbol
+    private final int escapeBits;
+    private final InputStream in;
+    private final byte[] inBuffer;
+    private int inPos = 0;
+    private int inLimit = 0;
+    private boolean inputExhausted = false;
+    private long bitBuffer = 0; // Pending bits, the most significant bit is the next one
+    private int bitCount = 0;
+    private long remaining; // Symbols still to be decoded
+
+    HuffmanDecoder(HuffmanDecodeTable table, InputStream in, long totalSymbols) {
+        this(table, in, totalSymbols, -1, 0);
+    }
+
+    // Creates a decoder for a stream in which 'escapeSymbol' introduces a
+    // symbol stored in 'escapeBits' plain bits
+    HuffmanDecoder(HuffmanDecodeTable table, InputStream in, long totalSymbols, int escapeSymbol, int escapeBits) {
+        this(table, in, totalSymbols, escapeSymbol, escapeBits, 8192);
+    }
+
+    // Creates a decoder that reads 'in' through a buffer of 'bufferSize'
+    // bytes, for streams known to be short
+    HuffmanDecoder(HuffmanDecodeTable table, InputStream in, long totalSymbols, int escapeSymbol, int escapeBits,
+            int bufferSize) {
+        this.table = table;
+        this.escapeSymbol = escapeSymbol;
+        this.escapeBits = escapeBits;
+        this.in = in;
+        this.remaining = totalSymbols;
+        this.inBuffer = new byte[Math.max(1, bufferSize)];
+    }
+
+    // Decodes up to len symbols into out starting at off. Returns the number of
+    // symbols decoded, or -1 once every symbol of the stream has been decoded.
+    int read(char[] out, int off, int len) throws IOException {
+        if (remaining == 0) {
+            return -1;
+        }
+        int limit = off + (int) Math.min(len, remaining);
+        int pos = off;
+
+        // With a single symbol in use no bits are stored, the symbol is just repeated
+        if (table.singleSymbol >= 0 && table.singleSymbol != escapeSymbol) {
+            char symbol = (char) table.singleSymbol;
+            while (pos < limit) {
+                out[pos++] = symbol;
+            }
+            remaining -= pos - off;
+            return pos - off;
+        }
+
+        int[] entries = table.entries;
+        int tableShift = 64 - HuffmanDecodeTable.PRIMARY_BITS;
+        long bits = bitBuffer;
+        int count = bitCount;
+
+        while (pos < limit) {
+            // Top up the bit buffer to at least 57 bits (or whatever input is left)
+            while (count <= 56) {
+                if (inPos == inLimit) {
+                    inLimit = in.read(inBuffer, 0, inBuffer.length);
+                    inPos = 0;
+                    if (inLimit <= 0) {
+                        inLimit = 0;
+                        inputExhausted = true;
+                        break;
+                    }
+                }
+                bits |= (long) (inBuffer[inPos++] & 0xFF) << (56 - count);
+                count += 8;
+            }
+
+            // Resolve as many whole symbols as the buffered bits allow
+            int start = pos;
+            while (pos < limit) {
+                int entry = entries[(int) (bits >>> tableShift)];
+                int length;
+                int symbol;
+                if (entry >= 0) {
+                    length = entry & 0xF;
+                    symbol = entry >>> 4;
+                } else {
+                    // Code longer than the primary table: resolve it length by length
+                    int resolved = table.decodeLong(bits, count);
+                    if (resolved < 0) {
+                        break; // Needs more bits than are buffered
+                    }
+                    length = resolved & 0xFF;
+                    symbol = resolved >>> 8;
+                }
+                if (symbol == escapeSymbol) {
+                    // The escape code is followed by the symbol itself
+                    if (length + escapeBits > count) {
+                        break; // Needs more bits than are buffered
+                    }
+                    bits <<= length;
+                    count -= length;
+                    symbol = (int) (bits >>> (64 - escapeBits));
+                    length = escapeBits;
+                } else if (length > count) {
+                    break; // Needs more bits than are buffered
+                }
+                bits <<= length;
+                count -= length;
+                out[pos++] = (char) symbol;
+            }
+
+            if (pos == start && inputExhausted) {
+                throw new EOFException("Compressed data ended before all symbols were decoded");
+            }
+        }
+
+        bitBuffer = bits;
+        bitCount = count;
+        remaining -= pos - off;
+        return pos - off;
+    }
+}
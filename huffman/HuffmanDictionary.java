@@ -0,0 +1,281 @@
+package huffman;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+
+// A code table trained once on sample data and reused for many small
+// records, so a record carries no code lengths and needs no counting pass:
+// compressing it is a single table-driven encode, decompressing it a single
+// table-driven decode.
+//
+// Symbols that did not occur in the samples are coded with an escape symbol
+// followed by the symbol itself in 8 (byte mode) or 16 (text mode) plain bits,
+// so any record can be compressed, just less well if it differs from the samples.
+//
+// Dictionary file layout:
+//   int DICTIONARY_MAGIC, int id, int alphabetSize,
+//   run-length encoded code lengths of alphabetSize + 1 symbols (the last is the escape)
+// The id is the CRC-32 of the alphabet size and code lengths.
+//
+// Record layout:
+//   int dictionary id, varint symbolCount, bitstream
+//
+// A dictionary is immutable, so one loaded instance can be cached and shared
+// by any number of threads.
+public final class HuffmanDictionary {
+
+    static final int DICTIONARY_MAGIC = 0x48554644; // "HUFD"
+
+    // Longest code a dictionary may use; an escaped symbol then still fits
+    // the decoder's bit buffer in one piece
+    private static final int MAX_DICTIONARY_CODE_LENGTH = 24;
+
+    private final int id;
+    private final int alphabetSize;
+    private final int escapeSymbol; // Equal to alphabetSize
+    private final int escapeBits; // Plain bits of an escaped symbol
+    private final int[] codeLengths; // alphabetSize + 1 entries, 0 for symbols that need the escape
+    private final long[] codes;
+    private final HuffmanDecodeTable decodeTable;
+
+    private HuffmanDictionary(int alphabetSize, int[] codeLengths) throws IOException {
+        this.alphabetSize = alphabetSize;
+        this.escapeSymbol = alphabetSize;
+        this.escapeBits = alphabetSize == HuffmanBlockCodec.BYTE_ALPHABET ? 8 : 16;
+        this.codeLengths = codeLengths;
+        this.codes = new long[alphabetSize + 1];
+        CanonicalHuffman.assignCodes(codeLengths, alphabetSize + 1, codes);
+        this.decodeTable = new HuffmanDecodeTable(codeLengths, alphabetSize + 1);
+        this.id = computeId(alphabetSize, codeLengths);
+    }
+
+    // Trains a byte mode dictionary on 'samples' with the default code length limit
+    public static HuffmanDictionary train(Iterable<byte[]> samples) {
+        return train(samples, CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    // Trains a byte mode dictionary on 'samples' with codes of at most 'maxCodeLength' bits
+    public static HuffmanDictionary train(Iterable<byte[]> samples, int maxCodeLength) {
+        long[] frequencyTable = new long[HuffmanBlockCodec.BYTE_ALPHABET + 1];
+        for (byte[] sample : samples) {
+            for (byte b : sample) {
+                frequencyTable[b & 0xFF]++;
+            }
+        }
+        return build(HuffmanBlockCodec.BYTE_ALPHABET, frequencyTable, maxCodeLength);
+    }
+
+    // Trains a text mode dictionary on 'samples' with codes of at most 'maxCodeLength' bits
+    public static HuffmanDictionary trainText(Iterable<? extends CharSequence> samples, int maxCodeLength) {
+        long[] frequencyTable = new long[HuffmanBlockCodec.MAX_CHAR + 1];
+        for (CharSequence sample : samples) {
+            for (int i = 0; i < sample.length(); i++) {
+                frequencyTable[sample.charAt(i)]++;
+            }
+        }
+        return build(HuffmanBlockCodec.MAX_CHAR, frequencyTable, maxCodeLength);
+    }
+
+    // Builds the code table from the sample frequencies. The escape symbol is
+    // given as many occurrences as there are symbols seen only once in the
+    // samples (at least one), the usual estimate of how often new symbols appear.
+    // Samples may hold more than 2^31 symbols, so the counts are longs and are
+    // scaled to a total that fits an int before the tree is built.
+    private static HuffmanDictionary build(int alphabetSize, long[] frequencyTable, int maxCodeLength) {
+        if (maxCodeLength <= 0 || maxCodeLength > MAX_DICTIONARY_CODE_LENGTH) {
+            throw new IllegalArgumentException("Code length limit must be between 1 and "
+                    + MAX_DICTIONARY_CODE_LENGTH + ": " + maxCodeLength);
+        }
+        int symbols = alphabetSize + 1;
+        int seenOnce = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (frequencyTable[i] == 1) {
+                seenOnce++;
+            }
+        }
+        frequencyTable[alphabetSize] = Math.max(1, seenOnce);
+        int[] weights = CanonicalHuffman.scaleFrequencies(frequencyTable, symbols);
+
+        int[] codeLengths = new int[symbols];
+        new HuffmanTreeBuilder().codeLengths(weights, symbols, codeLengths);
+        CanonicalHuffman.limitCodeLengths(weights, codeLengths, symbols, maxCodeLength);
+        try {
+            return new HuffmanDictionary(alphabetSize, codeLengths);
+        } catch (IOException e) {
+            throw new IllegalStateException("Trained code lengths are not a prefix code", e);
+        }
+    }
+
+    // Reads a dictionary written by save and checks its id
+    public static HuffmanDictionary load(Path file) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (dis.readInt() != DICTIONARY_MAGIC) {
+                throw new IOException("Not a dictionary file: " + file);
+            }
+            int id = dis.readInt();
+            int alphabetSize = dis.readInt();
+            if (alphabetSize != HuffmanBlockCodec.BYTE_ALPHABET && alphabetSize != HuffmanBlockCodec.MAX_CHAR) {
+                throw new IOException("Unsupported alphabet size in dictionary: " + alphabetSize);
+            }
+            int[] codeLengths = new int[alphabetSize + 1];
+            CanonicalHuffman.readCodeLengths(dis, codeLengths, alphabetSize + 1);
+            if (codeLengths[alphabetSize] == 0) {
+                throw new IOException("Dictionary has no escape code");
+            }
+            for (int length : codeLengths) {
+                if (length > MAX_DICTIONARY_CODE_LENGTH) {
+                    throw new IOException("Dictionary code too long: " + length);
+                }
+            }
+            HuffmanDictionary dictionary = new HuffmanDictionary(alphabetSize, codeLengths);
+            if (dictionary.id != id) {
+                throw new IOException("Dictionary file is corrupt (id mismatch): " + file);
+            }
+            return dictionary;
+        }
+    }
+
+    // Writes the dictionary to 'file'
+    public void save(Path file) throws IOException {
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            dos.writeInt(DICTIONARY_MAGIC);
+            dos.writeInt(id);
+            dos.writeInt(alphabetSize);
+            CanonicalHuffman.writeCodeLengths(dos, codeLengths, alphabetSize + 1);
+        }
+    }
+
+    // Identifies the dictionary; every record compressed with it starts with this id
+    public int id() {
+        return id;
+    }
+
+    // Returns true for a text mode dictionary, false for a byte mode one
+    public boolean isText() {
+        return alphabetSize == HuffmanBlockCodec.MAX_CHAR;
+    }
+
+    // Returns the id of the dictionary a record was compressed with, so the
+    // caller can pick it from its cache
+    public static int recordDictionaryId(byte[] record) throws IOException {
+        if (record.length < 4) {
+            throw new EOFException("Record too short");
+        }
+        return (record[0] & 0xFF) << 24 | (record[1] & 0xFF) << 16 | (record[2] & 0xFF) << 8 | (record[3] & 0xFF);
+    }
+
+    // Compresses a byte record with this byte mode dictionary
+    public byte[] compress(byte[] record) {
+        requireText(false);
+        char[] symbols = new char[record.length];
+        for (int i = 0; i < record.length; i++) {
+            symbols[i] = (char) (record[i] & 0xFF);
+        }
+        return encode(symbols);
+    }
+
+    // Compresses a text record with this text mode dictionary
+    public byte[] compress(CharSequence record) {
+        requireText(true);
+        char[] symbols = new char[record.length()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = record.charAt(i);
+        }
+        return encode(symbols);
+    }
+
+    // Decompresses a record written by compress(byte[])
+    public byte[] decompress(byte[] record) throws IOException {
+        requireText(false);
+        char[] symbols = decode(record);
+        byte[] bytes = new byte[symbols.length];
+        for (int i = 0; i < symbols.length; i++) {
+            bytes[i] = (byte) symbols[i];
+        }
+        return bytes;
+    }
+
+    // Decompresses a record written by compress(CharSequence)
+    public String decompressText(byte[] record) throws IOException {
+        requireText(true);
+        return new String(decode(record));
+    }
+
+    // Writes the id, the symbol count and the codes of all symbols,
+    // escaping the ones the samples did not contain. The size of the record
+    // is worked out first, so its buffers are allocated once at that size
+    // rather than at the defaults meant for whole files.
+    private byte[] encode(char[] symbols) {
+        long escapeCode = codes[escapeSymbol];
+        int escapeLength = codeLengths[escapeSymbol];
+        long bits = 0;
+        for (char symbol : symbols) {
+            int length = codeLengths[symbol];
+            bits += length != 0 ? length : escapeLength + escapeBits;
+        }
+        int payloadBytes = (int) ((bits + 7) / 8);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(4 + 5 + payloadBytes);
+            DataOutputStream dos = new DataOutputStream(bytes);
+            dos.writeInt(id);
+            CanonicalHuffman.writeVarInt(dos, symbols.length);
+            HuffmanBitWriter bitWriter = new HuffmanBitWriter(dos, payloadBytes);
+            for (char symbol : symbols) {
+                int length = codeLengths[symbol];
+                if (length != 0) {
+                    bitWriter.write(codes[symbol], length);
+                } else {
+                    bitWriter.write(escapeCode, escapeLength);
+                    bitWriter.write(symbol, escapeBits);
+                }
+            }
+            bitWriter.finish();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // A ByteArrayOutputStream does not fail
+        }
+    }
+
+    // Checks the id and decodes the symbols of a record, reading the
+    // bitstream through a buffer no larger than the record
+    private char[] decode(byte[] record) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(record));
+        int recordId = dis.readInt();
+        if (recordId != id) {
+            throw new IOException(String.format("Record was compressed with dictionary %08x, not %08x", recordId, id));
+        }
+        // Every symbol takes at least one bit, so a count the bitstream cannot
+        // hold is rejected before the symbols are allocated
+        int count = CanonicalHuffman.readVarInt(dis);
+        if (count < 0 || count > 8L * dis.available()) {
+            throw new IOException("Corrupt record length");
+        }
+        char[] symbols = new char[count];
+        HuffmanDecoder decoder = new HuffmanDecoder(decodeTable, dis, count, escapeSymbol, escapeBits,
+                dis.available());
+        int filled = 0;
+        while (filled < count) {
+            filled += decoder.read(symbols, filled, count - filled);
+        }
+        return symbols;
+    }
+
+    private void requireText(boolean text) {
+        if (isText() != text) {
+            throw new IllegalStateException(isText() ? "Text mode dictionary: compress text records"
+                    : "Byte mode dictionary: compress byte records");
+        }
+    }
+
+    private static int computeId(int alphabetSize, int[] codeLengths) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeInt(alphabetSize);
+        CanonicalHuffman.writeCodeLengths(dos, codeLengths, alphabetSize + 1);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        return (int) crc.getValue();
+    }
+}
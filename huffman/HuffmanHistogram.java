@@ -0,0 +1,206 @@
+package huffman;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// Counts symbol frequencies over bulk buffers.
+//
+// count() spreads the symbols below 256 over four interleaved sub-tables, so
+// a run of one symbol increments four different counters in turn instead of
+// waiting on its own previous store each time. Larger symbols go straight to
+// the full table: four copies of the 65536-symbol table would no longer fit
+// in the cache, and text is mostly made of small symbols anyway.
+//
+// An instance counts a long input on worker threads: add() collects chunks
+// into slices, every slice is counted into a partial table on the pool while
+// the caller keeps reading, and finish() merges the partial tables. Partial
+// tables are moved into 64-bit totals before they could overflow, so inputs
+// of any length are counted exactly in constant memory.
+class HuffmanHistogram {
+
+    static final int SLICE_SIZE = 1 << 20; // Symbols counted by one task
+    private static final int SMALL_SYMBOLS = 256; // Symbols counted in the interleaved sub-tables
+
+    private final int alphabetSize;
+    private final ExecutorService pool;
+    private final char[][] slices; // One slice buffer per task that can be in flight
+    private final int[][] partials; // One partial table per slice buffer
+    private final long[][] totals; // Counts moved out of each partial table
+    private final long[] partialCounts; // Symbols in each partial table since it was last moved
+    private final ArrayDeque<Future<?>> pending = new ArrayDeque<>();
+    private int slot = 0; // Slice buffer being filled
+    private int filled = 0; // Symbols in the slice buffer being filled
+
+    // Creates a histogram that counts up to 'parallelism' slices at once on 'pool'
+    HuffmanHistogram(int alphabetSize, ExecutorService pool, int parallelism) {
+        this.alphabetSize = alphabetSize;
+        this.pool = pool;
+        int slots = Math.max(1, parallelism);
+        this.slices = new char[slots][];
+        this.partials = new int[slots][];
+        this.totals = new long[slots][];
+        this.partialCounts = new long[slots];
+    }
+
+    // Adds the first 'length' symbols of 'chunk'. They are copied, so the
+    // caller can reuse the chunk right away.
+    void add(char[] chunk, int length) throws IOException {
+        int offset = 0;
+        while (offset < length) {
+            if (slices[slot] == null) {
+                slices[slot] = new char[SLICE_SIZE];
+                partials[slot] = new int[alphabetSize];
+                totals[slot] = new long[alphabetSize];
+            }
+            int n = Math.min(length - offset, SLICE_SIZE - filled);
+            System.arraycopy(chunk, offset, slices[slot], filled, n);
+            filled += n;
+            offset += n;
+            if (filled == SLICE_SIZE) {
+                submit();
+            }
+        }
+    }
+
+    // Waits for the slices still being counted and returns the merged table
+    long[] finish() throws IOException {
+        boolean completed = false;
+        try {
+            if (filled > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                HuffmanBlockCodec.await(pending.poll());
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                HuffmanBlockCodec.cancelAll(pending);
+            }
+        }
+
+        long[] table = new long[alphabetSize];
+        for (int s = 0; s < partials.length; s++) {
+            if (partials[s] != null) {
+                for (int i = 0; i < alphabetSize; i++) {
+                    table[i] += totals[s][i] + partials[s][i];
+                }
+            }
+        }
+        return table;
+    }
+
+    // Hands the slice buffer being filled to a worker and moves on to the
+    // next one, first waiting for the task that used it last
+    private void submit() throws IOException {
+        char[] slice = slices[slot];
+        int[] partial = partials[slot];
+        long[] total = totals[slot];
+        int length = filled;
+
+        // Move the partial table into the totals after this slice if the next
+        // one could overflow a count
+        partialCounts[slot] += length;
+        boolean move = partialCounts[slot] > Integer.MAX_VALUE - SLICE_SIZE;
+        if (move) {
+            partialCounts[slot] = 0;
+        }
+        pending.add(pool.submit(() -> {
+            count(slice, 0, length, partial);
+            if (move) {
+                for (int i = 0; i < partial.length; i++) {
+                    total[i] += partial[i];
+                    partial[i] = 0;
+                }
+            }
+        }));
+        slot = (slot + 1) % slices.length;
+        filled = 0;
+        if (pending.size() >= slices.length) {
+            try {
+                HuffmanBlockCodec.await(pending.poll());
+            } catch (IOException | RuntimeException e) {
+                HuffmanBlockCodec.cancelAll(pending);
+                throw e;
+            }
+        }
+    }
+
+    // Adds 'length' symbols of 'data' starting at 'offset' to 'table'
+    static void count(char[] data, int offset, int length, int[] table) {
+        count(data, offset, length, table, newSubTables());
+    }
+
+    // Returns four zeroed sub-tables for count, which a caller counting many
+    // blocks can keep and pass in every time
+    static int[][] newSubTables() {
+        return new int[4][SMALL_SYMBOLS];
+    }
+
+    // Adds 'length' symbols of 'data' starting at 'offset' to 'table', using
+    // the zeroed 'subTables' from newSubTables. They are zeroed again when
+    // the count is done.
+    static void count(char[] data, int offset, int length, int[] table, int[][] subTables) {
+        int[] t0 = subTables[0];
+        int[] t1 = subTables[1];
+        int[] t2 = subTables[2];
+        int[] t3 = subTables[3];
+
+        // Step 1: Four symbols per round, each into its own sub-table
+        int i = offset;
+        int end = offset + length;
+        for (int unrolledEnd = end - 3; i < unrolledEnd; i += 4) {
+            char c0 = data[i];
+            char c1 = data[i + 1];
+            char c2 = data[i + 2];
+            char c3 = data[i + 3];
+            if ((c0 | c1 | c2 | c3) < SMALL_SYMBOLS) {
+                t0[c0]++;
+                t1[c1]++;
+                t2[c2]++;
+                t3[c3]++;
+            } else {
+                table[c0]++;
+                table[c1]++;
+                table[c2]++;
+                table[c3]++;
+            }
+        }
+        for (; i < end; i++) {
+            table[data[i]]++;
+        }
+
+        // Step 2: Fold the sub-tables into the full table, clearing them for the next count
+        int small = Math.min(SMALL_SYMBOLS, table.length);
+        for (int s = 0; s < small; s++) {
+            table[s] += t0[s] + t1[s] + t2[s] + t3[s];
+            t0[s] = 0;
+            t1[s] = 0;
+            t2[s] = 0;
+            t3[s] = 0;
+        }
+    }
+
+    // Returns the number of symbols with a non-zero count in 'table'
+    static int distinct(int[] table) {
+        int used = 0;
+        for (int frequency : table) {
+            if (frequency != 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    static int distinct(long[] table) {
+        int used = 0;
+        for (long frequency : table) {
+            if (frequency != 0) {
+                used++;
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,149 @@
+package huffman;
+
+import java.io.*;
+
+// Input stream that decompresses block-framed byte-mode data as it is read.
+// Only one compressed block is held at a time and symbols are decoded on
+// demand into the caller's buffer, so output becomes available immediately
+// and memory use stays bounded by the block size. Interleaved and LZ77 blocks
+// are decoded whole, as their streams cover the block from four places at
+// once or refer back to earlier output. Stored blocks are copied out as they are.
+//
+// Like other filter streams it is meant to be used by one thread at a time.
+public class HuffmanInputStream extends FilterInputStream {
+
+    private final DataInputStream data;
+    private final char[] symbols = new char[8192]; // Decoded symbols before narrowing to bytes
+    private final byte[] single = new byte[1]; // Target of read()
+    private int blockSize = -1; // Read from the header on first use
+    private int layout; // Read from the header on first use
+    private HuffmanDecoder decoder; // Decoder of the current block, null between blocks
+    private char[] decoded; // Current block if decoded whole, null between blocks
+    private int decodedPosition; // Next symbol of 'decoded' to return
+    private byte[] stored; // Payload of the current stored block, null between blocks
+    private int storedPosition; // Next byte of 'stored' to return
+    private boolean finished = false;
+
+    // Creates a stream that decompresses the data read from in
+    public HuffmanInputStream(InputStream in) {
+        super(in);
+        this.data = new DataInputStream(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (!finished) {
+            if (stored != null) {
+                int n = Math.min(len, stored.length - storedPosition);
+                System.arraycopy(stored, storedPosition, b, off, n);
+                storedPosition += n;
+                if (storedPosition == stored.length) {
+                    stored = null; // Block exhausted, move on to the next one
+                }
+                return n;
+            }
+            if (decoded != null) {
+                int n = Math.min(len, decoded.length - decodedPosition);
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = (byte) decoded[decodedPosition + i];
+                }
+                decodedPosition += n;
+                if (decodedPosition == decoded.length) {
+                    decoded = null; // Block exhausted, move on to the next one
+                }
+                return n;
+            }
+            if (decoder == null) {
+                nextBlock();
+                continue;
+            }
+            int n = decoder.read(symbols, 0, Math.min(len, symbols.length));
+            if (n == -1) {
+                decoder = null; // Block exhausted, move on to the next one
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                b[off + i] = (byte) symbols[i];
+            }
+            return n;
+        }
+        return -1;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        byte[] scratch = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int r = read(scratch, 0, (int) Math.min(n - skipped, scratch.length));
+            if (r == -1) {
+                break;
+            }
+            skipped += r;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return 0;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    // Reads the header if needed, then the next block's index entry and payload
+    private void nextBlock() throws IOException {
+        if (blockSize < 0) {
+            int[] header = HuffmanBlockCodec.readHeader(data);
+            if (header[0] != HuffmanBlockCodec.BYTE_ALPHABET) {
+                throw new IOException("Stream was compressed in text mode, not byte mode");
+            }
+            blockSize = header[1];
+            layout = header[2];
+        }
+
+        int rawLength = data.readInt();
+        if (rawLength == 0) {
+            finished = true;
+            return;
+        }
+        byte[] payload = HuffmanBlockCodec.readPayload(data, rawLength, blockSize,
+                HuffmanBlockCodec.BYTE_ALPHABET, layout);
+        if (HuffmanBlockCodec.isStored(payload)) {
+            if (payload.length != HuffmanBlockCodec.storedSize(rawLength, HuffmanBlockCodec.BYTE_ALPHABET)) {
+                throw new IOException("Corrupt stored block length");
+            }
+            stored = payload;
+            storedPosition = 1; // Skip the marker
+            return;
+        }
+        if (layout != HuffmanBlockCodec.LAYOUT_SINGLE) {
+            decoded = HuffmanBlockCodec.decodeBlock(payload, rawLength, HuffmanBlockCodec.BYTE_ALPHABET, layout,
+                    HuffmanListener.NONE);
+            decodedPosition = 0;
+            return;
+        }
+        DataInputStream block = new DataInputStream(new ByteArrayInputStream(payload));
+        int[] codeLengths = new int[HuffmanBlockCodec.BYTE_ALPHABET];
+        CanonicalHuffman.readCodeLengths(block, codeLengths, HuffmanBlockCodec.BYTE_ALPHABET);
+        decoder = new HuffmanDecoder(new HuffmanDecodeTable(codeLengths, HuffmanBlockCodec.BYTE_ALPHABET), block,
+                rawLength);
+    }
+}
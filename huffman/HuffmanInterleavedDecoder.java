@@ -0,0 +1,197 @@
+package huffman;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+// Decodes a block that was encoded as STREAMS interleaved bitstreams.
+//
+// The block's symbols are split into STREAMS consecutive segments of equal
+// size (the last one may be shorter), each coded as its own bitstream. Where
+// a single stream has to finish one symbol before it knows where the next
+// one starts, the four streams here are independent: the main loop advances
+// four bit readers side by side, so the CPU can overlap their table lookups
+// and shifts.
+//
+// Payload layout after the code lengths:
+//   varint byte length of each stream but the last, then the streams
+class HuffmanInterleavedDecoder {
+
+    static final int STREAMS = 4;
+
+    // Reads eight bytes of a byte array as one big-endian long
+    private static final VarHandle WORD = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // State of one bit reader, used for the symbols after the interleaved part
+    private static final class BitReader {
+        long bits; // Pending bits, the most significant bit is the next one
+        int count; // Number of pending bits, including padding past the end
+        int position; // Next byte to load
+        int end; // End of this stream's bytes
+
+        BitReader(long bits, int count, int position, int end) {
+            this.bits = bits;
+            this.count = count;
+            this.position = position;
+            this.end = end;
+        }
+    }
+
+    private HuffmanInterleavedDecoder() {
+    }
+
+    // Returns the number of symbols in the segment of every stream but the last
+    static int segmentLength(int length) {
+        return (length + STREAMS - 1) / STREAMS;
+    }
+
+    // Decodes 'length' symbols into 'out'. The streams are data[start[k], start[k + 1])
+    static void decode(HuffmanDecodeTable table, byte[] data, int[] start, char[] out, int length)
+            throws IOException {
+        int[] entries = table.entries;
+        int tableShift = 64 - HuffmanDecodeTable.PRIMARY_BITS;
+        int segment = segmentLength(length);
+
+        // Symbols every stream can decode between two refills of 56 or more bits
+        int perRefill = Math.max(1, 56 / Math.max(1, table.maxLength));
+
+        long b0 = 0, b1 = 0, b2 = 0, b3 = 0;
+        int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+        int p0 = start[0], p1 = start[1], p2 = start[2], p3 = start[3];
+        int e0 = start[1], e1 = start[2], e2 = start[3], e3 = start[4];
+        int o0 = 0, o1 = segment, o2 = 2 * segment, o3 = 3 * segment;
+
+        // Step 1: Decode all four streams side by side for as many symbols as
+        // the shortest (last) segment holds. Bytes past a stream's end read as
+        // zeros and are checked for at the end.
+        int common = Math.max(0, length - 3 * segment);
+        for (int i = 0; i < common;) {
+            if (p0 <= e0 - 8 && p1 <= e1 - 8 && p2 <= e2 - 8 && p3 <= e3 - 8) {
+                // Load eight bytes per stream at once; the bytes that do not
+                // fit are loaded again by the next refill
+                b0 |= (long) WORD.get(data, p0) >>> c0;
+                p0 += (63 - c0) >>> 3;
+                c0 |= 56;
+                b1 |= (long) WORD.get(data, p1) >>> c1;
+                p1 += (63 - c1) >>> 3;
+                c1 |= 56;
+                b2 |= (long) WORD.get(data, p2) >>> c2;
+                p2 += (63 - c2) >>> 3;
+                c2 |= 56;
+                b3 |= (long) WORD.get(data, p3) >>> c3;
+                p3 += (63 - c3) >>> 3;
+                c3 |= 56;
+            } else {
+                while (c0 <= 56) {
+                    b0 |= (long) (p0 < e0 ? data[p0] & 0xFF : 0) << (56 - c0);
+                    p0++;
+                    c0 += 8;
+                }
+                while (c1 <= 56) {
+                    b1 |= (long) (p1 < e1 ? data[p1] & 0xFF : 0) << (56 - c1);
+                    p1++;
+                    c1 += 8;
+                }
+                while (c2 <= 56) {
+                    b2 |= (long) (p2 < e2 ? data[p2] & 0xFF : 0) << (56 - c2);
+                    p2++;
+                    c2 += 8;
+                }
+                while (c3 <= 56) {
+                    b3 |= (long) (p3 < e3 ? data[p3] & 0xFF : 0) << (56 - c3);
+                    p3++;
+                    c3 += 8;
+                }
+            }
+
+            int n = Math.min(perRefill, common - i);
+            for (int k = 0; k < n; k++) {
+                int x0 = entries[(int) (b0 >>> tableShift)];
+                int x1 = entries[(int) (b1 >>> tableShift)];
+                int x2 = entries[(int) (b2 >>> tableShift)];
+                int x3 = entries[(int) (b3 >>> tableShift)];
+                if ((x0 | x1 | x2 | x3) < 0) {
+                    // At least one code is longer than the primary table:
+                    // convert every entry to the (symbol << 8) | length form
+                    x0 = x0 < 0 ? table.decodeLong(b0, c0) : (x0 >>> 4) << 8 | (x0 & 0xF);
+                    x1 = x1 < 0 ? table.decodeLong(b1, c1) : (x1 >>> 4) << 8 | (x1 & 0xF);
+                    x2 = x2 < 0 ? table.decodeLong(b2, c2) : (x2 >>> 4) << 8 | (x2 & 0xF);
+                    x3 = x3 < 0 ? table.decodeLong(b3, c3) : (x3 >>> 4) << 8 | (x3 & 0xF);
+                    int l0 = x0 & 0xFF, l1 = x1 & 0xFF, l2 = x2 & 0xFF, l3 = x3 & 0xFF;
+                    b0 <<= l0;
+                    c0 -= l0;
+                    b1 <<= l1;
+                    c1 -= l1;
+                    b2 <<= l2;
+                    c2 -= l2;
+                    b3 <<= l3;
+                    c3 -= l3;
+                    out[o0++] = (char) (x0 >>> 8);
+                    out[o1++] = (char) (x1 >>> 8);
+                    out[o2++] = (char) (x2 >>> 8);
+                    out[o3++] = (char) (x3 >>> 8);
+                    continue;
+                }
+                int l0 = x0 & 0xF, l1 = x1 & 0xF, l2 = x2 & 0xF, l3 = x3 & 0xF;
+                b0 <<= l0;
+                c0 -= l0;
+                b1 <<= l1;
+                c1 -= l1;
+                b2 <<= l2;
+                c2 -= l2;
+                b3 <<= l3;
+                c3 -= l3;
+                out[o0++] = (char) (x0 >>> 4);
+                out[o1++] = (char) (x1 >>> 4);
+                out[o2++] = (char) (x2 >>> 4);
+                out[o3++] = (char) (x3 >>> 4);
+            }
+            i += n;
+        }
+
+        // Step 2: Finish the longer segments one stream at a time
+        decodeRest(table, data, new BitReader(b0, c0, p0, e0), out, o0, Math.min(length, segment));
+        decodeRest(table, data, new BitReader(b1, c1, p1, e1), out, o1, Math.min(length, 2 * segment));
+        decodeRest(table, data, new BitReader(b2, c2, p2, e2), out, o2, Math.min(length, 3 * segment));
+        decodeRest(table, data, new BitReader(b3, c3, p3, e3), out, o3, length);
+    }
+
+    // Decodes out[from, to) from one stream, then checks that the stream
+    // held every bit that was used
+    private static void decodeRest(HuffmanDecodeTable table, byte[] data, BitReader reader, char[] out, int from,
+            int to) throws IOException {
+        int[] entries = table.entries;
+        int tableShift = 64 - HuffmanDecodeTable.PRIMARY_BITS;
+        long bits = reader.bits;
+        int count = reader.count;
+        int position = reader.position;
+        int end = reader.end;
+        for (int i = from; i < to; i++) {
+            while (count <= 56) {
+                bits |= (long) (position < end ? data[position] & 0xFF : 0) << (56 - count);
+                position++;
+                count += 8;
+            }
+            int entry = entries[(int) (bits >>> tableShift)];
+            int length;
+            if (entry >= 0) {
+                length = entry & 0xF;
+                out[i] = (char) (entry >>> 4);
+            } else {
+                int resolved = table.decodeLong(bits, count);
+                length = resolved & 0xFF;
+                out[i] = (char) (resolved >>> 8);
+            }
+            bits <<= length;
+            count -= length;
+        }
+
+        // Padding bytes loaded past the end must still be in the buffer, unused
+        long padding = 8L * Math.max(0, position - end);
+        if (count < padding) {
+            throw new EOFException("Compressed data ended before all symbols were decoded");
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package huffman;
+
+// Receives progress and timing events from a running codec. Block formats
+// call it from several worker threads at once, so implementations must be
+// thread-safe and should return quickly.
+public interface HuffmanListener {
+
+    // Stages of compression and decompression that are timed separately
+    enum Phase {
+        MATCH_FIND("Match find"), // Replacing repeated strings by LZ77 matches
+        FREQUENCY_COUNT("Frequency count"), // Counting symbol frequencies
+        TREE_BUILD("Tree build"), // Building the tree and codes, or the decode table
+        ENCODE("Encode"), // Packing symbol codes into the bitstream
+        DECODE("Decode"), // Turning the bitstream back into symbols
+        FLUSH("Flush"); // Writing finished output
+
+        private final String displayName;
+
+        Phase(String displayName) {
+            this.displayName = displayName;
+        }
+
+        // Returns the name to show for the phase in a user interface
+        public String displayName() {
+            return displayName;
+        }
+    }
+
+    // Listener that ignores every event
+    HuffmanListener NONE = new HuffmanListener() {
+    };
+
+    // Called when 'count' more bytes of input have been consumed. Compression
+    // counts bytes of the original file, decompression bytes of the compressed file.
+    default void bytesProcessed(long count) {
+    }
+
+    // Called when one run of 'phase' has finished after 'nanos' nanoseconds.
+    // A phase runs once per block, so block formats report it many times.
+    default void phaseCompleted(Phase phase, long nanos) {
+    }
+
+    // Called when the job will consume 'totalBytes' bytes in all rather than
+    // the size of its input, because it has to read the input twice
+    default void totalBytesChanged(long totalBytes) {
+    }
+
+    // Called once per code table with the size of the data it codes, in bits,
+    // under the optimal (unlimited) code and under the length-limited code
+    // actually used. The two are equal unless the limit had to shorten codes.
+    default void codeTableBuilt(long optimalBits, long limitedBits) {
+    }
+}
@@ -0,0 +1,353 @@
+package huffman;
+
+import java.io.*;
+
+// LZ77 stage for byte mode blocks. A hash-chain match finder replaces
+// repeated byte strings by (length, distance) pairs, and the resulting tokens
+// are coded with two canonical Huffman tables, as in DEFLATE: one over
+// literals and match lengths, one over distances.
+//
+// Token alphabet: symbols 0-255 are literal bytes, 256 + c starts a match
+// whose length - MIN_MATCH falls into bucket c. A distance code follows.
+// Lengths and distances share the same bucket scheme: values below 4 are
+// their own code; a larger value with highest bit b gets code
+// 2 * b + (next lower bit) and is followed by its b - 1 lowest bits.
+//
+// Payload layout:
+//   run-length encoded code lengths of the LITERAL_LENGTH_SYMBOLS symbols,
+//   run-length encoded code lengths of the DISTANCE_SYMBOLS symbols, bitstream
+// Matches never reach back before the start of the block, so blocks stay
+// independent. The block ends once rawLength bytes have been produced. A
+// block that does not shrink enough is stored like any other (see
+// HuffmanBlockCodec).
+class HuffmanLz77 {
+
+    static final int MIN_MATCH = 3;
+    static final int MAX_MATCH = 258;
+    static final int MIN_WINDOW_BITS = 10;
+    static final int MAX_WINDOW_BITS = 24;
+    static final int DEFAULT_WINDOW_BITS = 16;
+    static final int MAX_LEVEL = 9;
+    static final int DEFAULT_LEVEL = 6;
+
+    static final int LENGTH_CODES = 16; // Buckets of MAX_MATCH - MIN_MATCH
+    static final int LITERAL_LENGTH_SYMBOLS = HuffmanBlockCodec.BYTE_ALPHABET + LENGTH_CODES;
+    static final int DISTANCE_SYMBOLS = 2 * (MAX_WINDOW_BITS - 1) + 2; // Buckets of (1 << MAX_WINDOW_BITS) - 1
+
+    private static final int HASH_BITS = 15;
+
+    // Per level 1-9: candidates tried per position, length that ends the
+    // search at once, and whether a match may be put off by one byte when
+    // the next position has a longer one (lazy matching)
+    private static final int[] MAX_CHAIN = { 0, 4, 8, 32, 16, 32, 128, 256, 1024, 4096 };
+    private static final int[] NICE_LENGTH = { 0, 8, 16, 32, 32, 64, 128, 258, 258, 258 };
+    private static final boolean[] LAZY = { false, false, false, false, true, true, true, true, true, true };
+
+    private HuffmanLz77() {
+    }
+
+    // Encodes 'length' bytes of 'data' (one per char) as a token payload in
+    // the buffer of 'encoder', using its tables and scratch arrays. Returns
+    // false, with the buffer in an undefined state, if the block should be
+    // stored instead
+    static boolean encodeBlock(HuffmanBlockEncoder encoder, char[] data, int length, HuffmanBlockOptions options,
+            HuffmanListener listener) throws IOException {
+        // Step 1: Turn the block into literal/length symbols plus the match
+        // lengths and distances they stand for
+        long start = System.nanoTime();
+        char[] symbols = encoder.tokens(length);
+        int[] matches = encoder.matches(length / MIN_MATCH + 1); // Length, distance per match
+        long counts = findMatches(encoder, data, length, options.lzLevel, 1 << options.lzWindowBits, symbols,
+                matches);
+        int symbolCount = (int) (counts >>> 32);
+        int matchCount = (int) counts;
+        long matched = System.nanoTime();
+        listener.phaseCompleted(HuffmanListener.Phase.MATCH_FIND, matched - start);
+
+        // Step 2: Count both alphabets
+        HuffmanBlockEncoder.CodeTable literals = encoder.literals;
+        HuffmanBlockEncoder.CodeTable distances = encoder.distances;
+        literals.reset(LITERAL_LENGTH_SYMBOLS);
+        distances.reset(DISTANCE_SYMBOLS);
+        HuffmanHistogram.count(symbols, 0, symbolCount, literals.frequencies, encoder.subTables);
+        int[] distanceFrequencies = distances.frequencies;
+        long extraBitCount = 0;
+        for (int m = 0; m < matchCount; m++) {
+            distanceFrequencies[bucket(matches[2 * m + 1] - 1)]++;
+            extraBitCount += extraBits(matches[2 * m] - MIN_MATCH) + extraBits(matches[2 * m + 1] - 1);
+        }
+        int literalsUsed = literals.collectUsed(LITERAL_LENGTH_SYMBOLS);
+        distances.collectUsed(DISTANCE_SYMBOLS);
+        long counted = System.nanoTime();
+        listener.phaseCompleted(HuffmanListener.Phase.FREQUENCY_COUNT, counted - matched);
+
+        // Store the block if even the entropy bound of the tokens saves too little
+        long estimatedBits = HuffmanBlockCodec.entropyBits(literals.frequencies, LITERAL_LENGTH_SYMBOLS, symbolCount)
+                + HuffmanBlockCodec.entropyBits(distanceFrequencies, DISTANCE_SYMBOLS, matchCount) + extraBitCount;
+        long estimatedBytes = (estimatedBits + 7) / 8 + 2L * literalsUsed;
+        if (!HuffmanBlockCodec.worthCoding(estimatedBytes, length, HuffmanBlockCodec.BYTE_ALPHABET, options)) {
+            return false;
+        }
+
+        // Step 3: Build both code tables and write their lengths
+        literals.build(encoder.treeBuilder, LITERAL_LENGTH_SYMBOLS, options.maxCodeLength, listener);
+        if (matchCount > 0) {
+            distances.build(encoder.treeBuilder, DISTANCE_SYMBOLS, options.maxCodeLength, listener);
+        }
+        int[] literalLengths = literals.codeLengths;
+        int[] distanceLengths = distances.codeLengths;
+        long[] literalCodes = literals.codes;
+        long[] distanceCodes = distances.codes;
+
+        CanonicalHuffman.writeCodeLengths(encoder.dos, literalLengths, LITERAL_LENGTH_SYMBOLS);
+        CanonicalHuffman.writeCodeLengths(encoder.dos, distanceLengths, DISTANCE_SYMBOLS);
+        long built = System.nanoTime();
+        listener.phaseCompleted(HuffmanListener.Phase.TREE_BUILD, built - counted);
+
+        // Step 4: Write the tokens, each match followed by its extra bits and distance
+        HuffmanBitWriter bitWriter = encoder.bitWriter;
+        int m = 0;
+        for (int i = 0; i < symbolCount; i++) {
+            char symbol = symbols[i];
+            bitWriter.write(literalCodes[symbol], literalLengths[symbol]);
+            if (symbol >= HuffmanBlockCodec.BYTE_ALPHABET) {
+                writeExtraBits(bitWriter, matches[2 * m] - MIN_MATCH);
+                int distance = matches[2 * m + 1] - 1;
+                int code = bucket(distance);
+                bitWriter.write(distanceCodes[code], distanceLengths[code]);
+                writeExtraBits(bitWriter, distance);
+                m++;
+            }
+        }
+        bitWriter.finish();
+        listener.phaseCompleted(HuffmanListener.Phase.ENCODE, System.nanoTime() - built);
+        return HuffmanBlockCodec.keepCoded(encoder.bytes.size(), length, HuffmanBlockCodec.BYTE_ALPHABET, options);
+    }
+
+    // Fills 'symbols' with literals and length symbols and 'matches' with the
+    // (length, distance) of every match. Returns (symbolCount << 32) | matchCount
+    private static long findMatches(HuffmanBlockEncoder encoder, char[] data, int length, int level, int window,
+            char[] symbols, int[] matches) {
+        int maxChain = MAX_CHAIN[level];
+        int niceLength = NICE_LENGTH[level];
+        boolean lazy = LAZY[level];
+
+        // head holds the latest position of every hash, prev the previous
+        // position with the same hash as each position in the window
+        int[] head = encoder.hashHeads(1 << HASH_BITS);
+        int windowSize = Math.min(window, Integer.highestOneBit(Math.max(1, length - 1)) << 1);
+        int[] prev = encoder.hashChain(windowSize);
+        int mask = windowSize - 1;
+
+        int symbolCount = 0;
+        int matchCount = 0;
+        int i = 0;
+        long found = longestMatch(data, length, 0, head, prev, mask, windowSize, maxChain, niceLength);
+        while (i < length) {
+            int matchLength = (int) (found >>> 32);
+            int distance = (int) found;
+            if (matchLength < MIN_MATCH) {
+                symbols[symbolCount++] = data[i];
+                i++;
+                found = longestMatch(data, length, i, head, prev, mask, windowSize, maxChain, niceLength);
+                continue;
+            }
+            if (lazy && matchLength < niceLength) {
+                // Emit a literal instead if the next position starts a longer match
+                long next = longestMatch(data, length, i + 1, head, prev, mask, windowSize, maxChain, niceLength);
+                if ((int) (next >>> 32) > matchLength) {
+                    symbols[symbolCount++] = data[i];
+                    i++;
+                    found = next;
+                    continue;
+                }
+                insertRange(data, length, i + 2, i + matchLength, head, prev, mask);
+            } else {
+                insertRange(data, length, i + 1, i + matchLength, head, prev, mask);
+            }
+            symbols[symbolCount++] = (char) (HuffmanBlockCodec.BYTE_ALPHABET + bucket(matchLength - MIN_MATCH));
+            matches[2 * matchCount] = matchLength;
+            matches[2 * matchCount + 1] = distance;
+            matchCount++;
+            i += matchLength;
+            found = longestMatch(data, length, i, head, prev, mask, windowSize, maxChain, niceLength);
+        }
+        return (long) symbolCount << 32 | matchCount;
+    }
+
+    // Searches the hash chain of position 'i' for the longest earlier match,
+    // then adds 'i' to the chain. Returns (length << 32) | distance, or 0 if
+    // there are fewer than MIN_MATCH bytes left
+    private static long longestMatch(char[] data, int length, int i, int[] head, int[] prev, int mask,
+            int windowSize, int maxChain, int niceLength) {
+        if (i + MIN_MATCH > length) {
+            return 0;
+        }
+        int hash = hash(data, i);
+        int candidate = head[hash];
+        prev[i & mask] = candidate;
+        head[hash] = i;
+
+        int limit = Math.min(MAX_MATCH, length - i);
+        int bestLength = 0;
+        int bestDistance = 0;
+        int chain = maxChain;
+        while (candidate >= 0 && i - candidate < windowSize && chain-- > 0) {
+            // Check the byte that would make this match longer first
+            if (data[candidate + bestLength] == data[i + bestLength] && data[candidate] == data[i]) {
+                int n = 1;
+                while (n < limit && data[candidate + n] == data[i + n]) {
+                    n++;
+                }
+                if (n > bestLength) {
+                    bestLength = n;
+                    bestDistance = i - candidate;
+                    if (n >= niceLength || n == limit) {
+                        break;
+                    }
+                }
+            }
+            int next = prev[candidate & mask];
+            if (next >= candidate) {
+                break; // The slot was reused by a newer position: the chain ends here
+            }
+            candidate = next;
+        }
+        return (long) bestLength << 32 | bestDistance;
+    }
+
+    // Adds positions [from, to) to the hash chains
+    private static void insertRange(char[] data, int length, int from, int to, int[] head, int[] prev, int mask) {
+        int end = Math.min(to, length - MIN_MATCH + 1);
+        for (int i = from; i < end; i++) {
+            int hash = hash(data, i);
+            prev[i & mask] = head[hash];
+            head[hash] = i;
+        }
+    }
+
+    private static int hash(char[] data, int i) {
+        int key = data[i] << 16 | data[i + 1] << 8 | data[i + 2];
+        return (key * 0x9E3779B1) >>> (32 - HASH_BITS);
+    }
+
+    // Returns the bucket code of a match length or distance value
+    static int bucket(int value) {
+        if (value < 4) {
+            return value;
+        }
+        int b = 31 - Integer.numberOfLeadingZeros(value);
+        return 2 * b + ((value >>> (b - 1)) & 1);
+    }
+
+    // Returns the number of bits written after the bucket code of 'value'
+    private static int extraBits(int value) {
+        return value < 4 ? 0 : 30 - Integer.numberOfLeadingZeros(value);
+    }
+
+    // Writes the bits of 'value' below those its bucket code implies
+    private static void writeExtraBits(HuffmanBitWriter bitWriter, int value) throws IOException {
+        int extra = extraBits(value);
+        if (extra > 0) {
+            bitWriter.write(value & ((1 << extra) - 1), extra);
+        }
+    }
+
+    // Decodes a token payload back into its rawLength bytes, one per char
+    static char[] decodeBlock(byte[] payload, int rawLength, HuffmanListener listener) throws IOException {
+        long start = System.nanoTime();
+        ByteArrayInputStream in = new ByteArrayInputStream(payload);
+        DataInputStream dis = new DataInputStream(in);
+        int[] literalLengths = new int[LITERAL_LENGTH_SYMBOLS];
+        int[] distanceLengths = new int[DISTANCE_SYMBOLS];
+        CanonicalHuffman.readCodeLengths(dis, literalLengths, LITERAL_LENGTH_SYMBOLS);
+        CanonicalHuffman.readCodeLengths(dis, distanceLengths, DISTANCE_SYMBOLS);
+        HuffmanDecodeTable literalTable = new HuffmanDecodeTable(literalLengths, LITERAL_LENGTH_SYMBOLS);
+        HuffmanDecodeTable distanceTable = new HuffmanDecodeTable(distanceLengths, DISTANCE_SYMBOLS);
+        long built = System.nanoTime();
+        listener.phaseCompleted(HuffmanListener.Phase.TREE_BUILD, built - start);
+
+        char[] out = new char[rawLength];
+        int position = payload.length - in.available();
+        int end = payload.length;
+        long bits = 0; // Pending bits, the most significant bit is the next one
+        int count = 0; // Number of pending bits, including zero padding past the end
+        int o = 0;
+        while (o < rawLength) {
+            while (count <= 56) {
+                bits |= (long) (position < end ? payload[position] & 0xFF : 0) << (56 - count);
+                position++;
+                count += 8;
+            }
+            int symbol = decodeSymbol(literalTable, bits, count);
+            int codeLength = symbol & 0xFF;
+            symbol >>>= 8;
+            bits <<= codeLength;
+            count -= codeLength;
+            if (symbol < HuffmanBlockCodec.BYTE_ALPHABET) {
+                out[o++] = (char) symbol;
+                continue;
+            }
+
+            // A match: the length's extra bits fit the bits left from the refill
+            int code = symbol - HuffmanBlockCodec.BYTE_ALPHABET;
+            int extra = code < 4 ? 0 : code / 2 - 1;
+            int matchLength = MIN_MATCH + unbucket(code, extra == 0 ? 0 : (int) (bits >>> (64 - extra)));
+            bits <<= extra;
+            count -= extra;
+
+            while (count <= 56) {
+                bits |= (long) (position < end ? payload[position] & 0xFF : 0) << (56 - count);
+                position++;
+                count += 8;
+            }
+            symbol = decodeSymbol(distanceTable, bits, count);
+            codeLength = symbol & 0xFF;
+            code = symbol >>> 8;
+            bits <<= codeLength;
+            count -= codeLength;
+            while (count <= 56) {
+                bits |= (long) (position < end ? payload[position] & 0xFF : 0) << (56 - count);
+                position++;
+                count += 8;
+            }
+            extra = code < 4 ? 0 : code / 2 - 1;
+            int distance = 1 + unbucket(code, extra == 0 ? 0 : (int) (bits >>> (64 - extra)));
+            bits <<= extra;
+            count -= extra;
+
+            if (distance > o || matchLength > rawLength - o) {
+                throw new IOException("Corrupt match in compressed data");
+            }
+            // Copy forward one symbol at a time: the source may overlap the output
+            for (int k = 0; k < matchLength; k++, o++) {
+                out[o] = out[o - distance];
+            }
+        }
+
+        // Padding bytes loaded past the end must still be in the buffer, unused
+        if (count < 8L * Math.max(0, position - end)) {
+            throw new EOFException("Compressed data ended before all symbols were decoded");
+        }
+        listener.phaseCompleted(HuffmanListener.Phase.DECODE, System.nanoTime() - built);
+        return out;
+    }
+
+    // Resolves the next code; returns (symbol << 8) | length
+    private static int decodeSymbol(HuffmanDecodeTable table, long bits, int count) throws IOException {
+        int entry = table.entries[(int) (bits >>> (64 - HuffmanDecodeTable.PRIMARY_BITS))];
+        if (entry >= 0) {
+            return (entry >>> 4) << 8 | (entry & 0xF);
+        }
+        return table.decodeLong(bits, count);
+    }
+
+    // Rebuilds a value from its bucket code and extra bits
+    private static int unbucket(int code, int extraValue) {
+        if (code < 4) {
+            return code;
+        }
+        int b = code / 2;
+        return (2 | (code & 1)) << (b - 1) | extraValue;
+    }
+}
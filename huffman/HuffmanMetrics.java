@@ -0,0 +1,203 @@
+package huffman;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Collects the progress, per-phase timings, throughput and peak heap of a
+// codec job. Pass it to a HuffmanCodec as its listener, call start before
+// each job and finish after it; the getters can be read at any time from any
+// thread, and register exposes them over JMX.
+//
+// Phase timings are summed over all worker threads, so with parallel blocks
+// they can add up to more than the elapsed time.
+public class HuffmanMetrics implements HuffmanListener, HuffmanMetricsMXBean {
+
+    private final LongAdder[] phaseNanos = new LongAdder[Phase.values().length];
+    private final LongAdder bytesProcessed = new LongAdder();
+    private final LongAdder optimalBits = new LongAdder();
+    private final LongAdder limitedBits = new LongAdder();
+    private final AtomicLong peakHeap = new AtomicLong();
+    private volatile long totalBytes = -1; // -1 if unknown
+    private volatile long startNanos = System.nanoTime();
+    private volatile long endNanos = -1; // -1 while the job is running
+    private ObjectName registeredName;
+
+    public HuffmanMetrics() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+        }
+    }
+
+    // Resets all counters for a new job over 'totalBytes' bytes of input (-1 if unknown)
+    public void start(long totalBytes) {
+        for (LongAdder adder : phaseNanos) {
+            adder.reset();
+        }
+        bytesProcessed.reset();
+        optimalBits.reset();
+        limitedBits.reset();
+        peakHeap.set(0);
+        sampleHeap();
+        this.totalBytes = totalBytes;
+        this.endNanos = -1;
+        this.startNanos = System.nanoTime();
+    }
+
+    // Stops the clock of the current job
+    public void finish() {
+        sampleHeap();
+        endNanos = System.nanoTime();
+    }
+
+    @Override
+    public void bytesProcessed(long count) {
+        bytesProcessed.add(count);
+        sampleHeap();
+    }
+
+    @Override
+    public void totalBytesChanged(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    @Override
+    public void phaseCompleted(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()].add(nanos);
+        sampleHeap();
+    }
+
+    @Override
+    public void codeTableBuilt(long optimalBits, long limitedBits) {
+        this.optimalBits.add(optimalBits);
+        this.limitedBits.add(limitedBits);
+    }
+
+    // Returns the time spent in 'phase' so far, in milliseconds
+    public long getPhaseMillis(Phase phase) {
+        return phaseNanos[phase.ordinal()].sum() / 1_000_000;
+    }
+
+    @Override
+    public long getBytesProcessed() {
+        return bytesProcessed.sum();
+    }
+
+    @Override
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // Fraction of the input processed so far, between 0 and 1, or -1 if the total is unknown
+    @Override
+    public double getProgress() {
+        long total = totalBytes;
+        if (total < 0) {
+            return -1;
+        }
+        if (total == 0) {
+            return 1;
+        }
+        return Math.min(1.0, (double) getBytesProcessed() / total);
+    }
+
+    @Override
+    public long getElapsedMillis() {
+        long end = endNanos;
+        return ((end < 0 ? System.nanoTime() : end) - startNanos) / 1_000_000;
+    }
+
+    @Override
+    public double getThroughputMegabytesPerSecond() {
+        long millis = getElapsedMillis();
+        if (millis == 0) {
+            return 0;
+        }
+        return getBytesProcessed() / (1024.0 * 1024.0) / (millis / 1000.0);
+    }
+
+    // Highest heap use observed while the job was running
+    @Override
+    public long getPeakHeapBytes() {
+        return peakHeap.get();
+    }
+
+    @Override
+    public long getMatchFindMillis() {
+        return getPhaseMillis(Phase.MATCH_FIND);
+    }
+
+    @Override
+    public long getFrequencyCountMillis() {
+        return getPhaseMillis(Phase.FREQUENCY_COUNT);
+    }
+
+    @Override
+    public long getTreeBuildMillis() {
+        return getPhaseMillis(Phase.TREE_BUILD);
+    }
+
+    @Override
+    public long getEncodeMillis() {
+        return getPhaseMillis(Phase.ENCODE);
+    }
+
+    @Override
+    public long getDecodeMillis() {
+        return getPhaseMillis(Phase.DECODE);
+    }
+
+    @Override
+    public long getFlushMillis() {
+        return getPhaseMillis(Phase.FLUSH);
+    }
+
+    // How much larger the coded data is because of the code length limit than
+    // it would be with optimal codes, in percent
+    @Override
+    public double getLengthLimitCostPercent() {
+        long optimal = optimalBits.sum();
+        if (optimal == 0) {
+            return 0;
+        }
+        return (limitedBits.sum() - optimal) * 100.0 / optimal;
+    }
+
+    // Registers these metrics with the platform MBean server as
+    // huffman:type=HuffmanMetrics,name=<name>
+    public synchronized void register(String name) throws IOException {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("huffman:type=HuffmanMetrics,name=" + ObjectName.quote(name));
+            server.registerMBean(this, objectName);
+            registeredName = objectName;
+        } catch (JMException e) {
+            throw new IOException("Could not register metrics as " + name, e);
+        }
+    }
+
+    // Removes these metrics from the platform MBean server again
+    public synchronized void unregister() throws IOException {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        } catch (JMException e) {
+            throw new IOException("Could not unregister metrics", e);
+        }
+    }
+
+    // Records the current heap use if it is a new peak
+    private void sampleHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        peakHeap.accumulateAndGet(used, Math::max);
+    }
+}
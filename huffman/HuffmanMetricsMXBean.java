@@ -0,0 +1,31 @@
+package huffman;
+
+// Management interface of HuffmanMetrics, readable over JMX
+public interface HuffmanMetricsMXBean {
+
+    long getBytesProcessed();
+
+    long getTotalBytes();
+
+    double getProgress();
+
+    long getElapsedMillis();
+
+    double getThroughputMegabytesPerSecond();
+
+    long getPeakHeapBytes();
+
+    long getMatchFindMillis();
+
+    long getFrequencyCountMillis();
+
+    long getTreeBuildMillis();
+
+    long getEncodeMillis();
+
+    long getDecodeMillis();
+
+    long getFlushMillis();
+
+    double getLengthLimitCostPercent();
+}
@@ -0,0 +1,123 @@
+package huffman;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+// Output stream that compresses the bytes written to it into the block-framed
+// byte format. Bytes are collected into one block at a time; each full block
+// is encoded and written out, so memory use stays bounded by the block size.
+// The stream keeps one encoder for all its blocks and writes each payload
+// straight from the encoder's buffer, so steady-state writing allocates nothing.
+//
+// Like other filter streams it is meant to be used by one thread at a time.
+public class HuffmanOutputStream extends FilterOutputStream {
+
+    private final WritableByteChannel channel;
+    private final byte[] block;
+    private final HuffmanBlockOptions options;
+    private final HuffmanBlockEncoder encoder = new HuffmanBlockEncoder(); // Reused for every block
+    private int count = 0; // Bytes collected in the current block
+    private boolean headerWritten = false;
+    private boolean finished = false;
+
+    // Creates a stream with the default block size
+    public HuffmanOutputStream(OutputStream out) {
+        this(out, HuffmanCodec.DEFAULT_BLOCK_SIZE);
+    }
+
+    // Creates a stream that encodes blocks of blockSize bytes
+    public HuffmanOutputStream(OutputStream out, int blockSize) {
+        this(out, blockSize, HuffmanBlockOptions.DEFAULT);
+    }
+
+    // Creates a stream that encodes blocks of blockSize bytes as set out by options
+    public HuffmanOutputStream(OutputStream out, int blockSize, HuffmanBlockOptions options) {
+        super(out);
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        if (options == null) {
+            throw new NullPointerException("options");
+        }
+        this.channel = Channels.newChannel(out);
+        this.block = new byte[blockSize];
+        this.options = options;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        block[count++] = (byte) b;
+        if (count == block.length) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int n = Math.min(len, block.length - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == block.length) {
+                writeBlock();
+            }
+        }
+    }
+
+    // Encodes the pending partial block and writes the end marker without
+    // closing the underlying stream. Nothing may be written afterwards
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeHeaderIfNeeded();
+        if (count > 0) {
+            writeBlock();
+        }
+        HuffmanBlockCodec.writeEnd(channel);
+        finished = true;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    // Encodes the collected bytes as one block
+    private void writeBlock() throws IOException {
+        writeHeaderIfNeeded();
+        int payloadLength = encoder.encode(ByteBuffer.wrap(block, 0, count), options, HuffmanListener.NONE);
+        HuffmanBlockCodec.writeBlock(channel, count, encoder.buffer(), payloadLength);
+        count = 0;
+    }
+
+    private void writeHeaderIfNeeded() throws IOException {
+        if (!headerWritten) {
+            HuffmanBlockCodec.writeHeader(channel, HuffmanBlockCodec.BYTE_ALPHABET, block.length,
+                    options.layout(HuffmanBlockCodec.BYTE_ALPHABET));
+            headerWritten = true;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (finished) {
+            throw new IOException("Stream already finished");
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package huffman;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+
+// Two-pass text compression into a single Huffman stream: the first pass
+// builds one frequency table for the whole file, the second pass encodes it.
+//
+// Layout: int SINGLE_STREAM_MAGIC, varint (64-bit) totalChars, run-length
+// encoded canonical code lengths, then the bitstream (empty if only one
+// character is used).
+//
+// Counts are kept as longs throughout, so files of more than 2^31 characters
+// compress correctly. The tree is built over the counts scaled down to a
+// total that fits an int (see CanonicalHuffman.scaleFrequencies); memory use
+// does not grow with the file size.
+//
+// Inputs of up to IN_MEMORY_LIMIT bytes are kept in memory by the first pass
+// and encoded from there, so only larger files are read twice. Both reads
+// report progress and can be cancelled. Streams that cannot be read twice
+// use the one-pass block-framed format instead.
+//
+// An instance holds the tables of one compression run and is not shared
+// between threads.
+class HuffmanSingleStream {
+
+    static final int SINGLE_STREAM_MAGIC = 0x48554653; // "HUFS"
+    private static final int MAX_CHAR = HuffmanBlockCodec.MAX_CHAR; // Unicode range
+    private static final int IN_MEMORY_LIMIT = 1 << 24; // Bytes of input kept from the first pass
+
+    private long[] frequencyTable; // Store frequencies
+    private final long[] huffmanCodes = new long[MAX_CHAR]; // Code bits, right-aligned
+    private final int[] huffmanCodeLengths = new int[MAX_CHAR]; // Number of bits in each code
+    private int charCount = 0; // Number of unique characters
+    private char[] text; // Input read by the first pass, null if it is read again
+    private int textLength = 0;
+    private final int maxCodeLength; // Longest code the encoder may assign
+    private final ExecutorService pool; // Workers that count the first pass
+    private final HuffmanListener listener;
+
+    private HuffmanSingleStream(int maxCodeLength, ExecutorService pool, HuffmanListener listener) {
+        this.maxCodeLength = maxCodeLength;
+        this.pool = pool;
+        this.listener = listener;
+    }
+
+    // Compresses a text file with a fresh set of tables and codes of at most
+    // 'maxCodeLength' bits. The first pass, which reads the whole file, is
+    // counted on 'pool'. A failed or cancelled run deletes its output.
+    static void compress(Path inputFile, Path outputFile, int maxCodeLength, ExecutorService pool,
+            HuffmanListener listener) throws IOException {
+        HuffmanSingleStream stream = new HuffmanSingleStream(maxCodeLength, pool, listener);
+        boolean completed = false;
+        try {
+            // Step 1: Build frequency table
+            long size = Files.size(inputFile);
+            if (size <= IN_MEMORY_LIMIT) {
+                stream.text = new char[(int) Math.min(size, 8192)];
+            } else {
+                listener.totalBytesChanged(2 * size);
+            }
+            long start = System.nanoTime();
+            stream.buildFrequencyTable(inputFile);
+            long counted = System.nanoTime();
+            listener.phaseCompleted(HuffmanListener.Phase.FREQUENCY_COUNT, counted - start);
+
+            // Step 2: Build Huffman Tree and generate the codes
+            stream.generateHuffmanCodes();
+            listener.phaseCompleted(HuffmanListener.Phase.TREE_BUILD, System.nanoTime() - counted);
+
+            // Step 3: Compress the file
+            stream.compressFile(inputFile, outputFile);
+            completed = true;
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(outputFile);
+            }
+        }
+    }
+
+    // Method to read a file and build the frequency table of characters. This
+    // thread only decodes the file into chunks; the histogram counts them on
+    // the workers and merges their tables at the end.
+    private void buildFrequencyTable(Path filePath) throws IOException {
+        HuffmanHistogram histogram = new HuffmanHistogram(MAX_CHAR, pool,
+                Runtime.getRuntime().availableProcessors());
+        try (Reader reader = new InputStreamReader(
+                new ProgressInputStream(Files.newInputStream(filePath), listener), Charset.defaultCharset())) {
+            char[] chunk = new char[65536];
+            int n;
+            while ((n = reader.read(chunk, 0, chunk.length)) != -1) {
+                histogram.add(chunk, n);
+                keepText(chunk, n);
+            }
+        }
+        frequencyTable = histogram.finish();
+        charCount = HuffmanHistogram.distinct(frequencyTable);
+    }
+
+
+    // Appends a chunk to the in-memory copy of the input, or drops the copy
+    // once the input no longer fits under IN_MEMORY_LIMIT
+    private void keepText(char[] chunk, int n) {
+        if (text == null) {
+            return;
+        }
+        if (textLength + n > text.length) {
+            if (textLength + n > IN_MEMORY_LIMIT) {
+                text = null;
+                return;
+            }
+            text = Arrays.copyOf(text, Math.min(IN_MEMORY_LIMIT, Math.max(2 * text.length, textLength + n)));
+        }
+        System.arraycopy(chunk, 0, text, textLength, n);
+        textLength += n;
+    }
+
+    // Builds the Huffman Tree using the frequency table and min-heap, limits
+    // its code lengths to maxCodeLength and assigns canonical codes to them
+    private void generateHuffmanCodes() {
+        int[] weights = CanonicalHuffman.scaleFrequencies(frequencyTable, MAX_CHAR);
+        if (new HuffmanTreeBuilder().codeLengths(weights, MAX_CHAR, huffmanCodeLengths) == 0) {
+            return; // Empty input: no codes
+        }
+        long optimalBits = CanonicalHuffman.encodedBits(frequencyTable, huffmanCodeLengths, MAX_CHAR);
+        long limitedBits = optimalBits;
+        if (CanonicalHuffman.limitCodeLengths(weights, huffmanCodeLengths, MAX_CHAR, maxCodeLength)) {
+            limitedBits = CanonicalHuffman.encodedBits(frequencyTable, huffmanCodeLengths, MAX_CHAR);
+        }
+        listener.codeTableBuilt(optimalBits, limitedBits);
+        CanonicalHuffman.assignCodes(huffmanCodeLengths, MAX_CHAR, huffmanCodes);
+    }
+
+    // Compresses the input file using Huffman encoding and writes to the output
+    // binary file
+    private void compressFile(Path inputFilePath, Path outputFilePath) throws IOException {
+        // Open the output file in buffered mode; the input is only opened again
+        // if the first pass could not keep it in memory
+        try (DataOutputStream dos = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(outputFilePath), 8192))) {
+
+            // Write the header: magic number, character count and the code lengths
+            long totalChars = 0;
+            for (int i = 0; i < MAX_CHAR; i++) {
+                totalChars += frequencyTable[i];
+            }
+            dos.writeInt(SINGLE_STREAM_MAGIC);
+            CanonicalHuffman.writeVarLong(dos, totalChars);
+            CanonicalHuffman.writeCodeLengths(dos, huffmanCodeLengths, MAX_CHAR);
+            if (charCount <= 1) {
+                return; // Zero or one distinct character needs no bits at all
+            }
+
+            // Encode the input in blocks of characters; the loop only does table
+            // lookups and shifts, so nothing is allocated per character
+            long start = System.nanoTime();
+            HuffmanBitWriter bitWriter = new HuffmanBitWriter(dos);
+            if (text != null) {
+                for (int off = 0; off < textLength; off += 65536) {
+                    HuffmanBlockCodec.checkCancelled();
+                    encode(bitWriter, text, off, Math.min(65536, textLength - off));
+                }
+            } else {
+                try (Reader br = new InputStreamReader(new ProgressInputStream(Files.newInputStream(inputFilePath),
+                        listener), Charset.defaultCharset())) {
+                    char[] chunk = new char[8192];
+                    int n;
+                    while ((n = br.read(chunk, 0, chunk.length)) != -1) {
+                        HuffmanBlockCodec.checkCancelled();
+                        encode(bitWriter, chunk, 0, n);
+                    }
+                }
+            }
+            long encoded = System.nanoTime();
+            listener.phaseCompleted(HuffmanListener.Phase.ENCODE, encoded - start);
+
+            // Write the final partial byte, padded with zeros
+            bitWriter.finish();
+            dos.flush();
+            listener.phaseCompleted(HuffmanListener.Phase.FLUSH, System.nanoTime() - encoded);
+        }
+    }
+
+    // Writes the codes of n characters of chunk starting at off
+    private void encode(HuffmanBitWriter bitWriter, char[] chunk, int off, int n) throws IOException {
+        long[] codes = huffmanCodes;
+        int[] codeLengths = huffmanCodeLengths;
+        for (int i = off; i < off + n; i++) {
+            char ch = chunk[i];
+            bitWriter.write(codes[ch], codeLengths[ch]);
+        }
+    }
+
+    // Decompresses a single-stream file with the table-driven decoder,
+    // resolving a whole symbol per table lookup
+    static void decompress(Path inputFilePath, Path outputFilePath, HuffmanListener listener) throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                new ProgressInputStream(Files.newInputStream(inputFilePath), listener), 8192));
+                BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath.toFile()))) {
+
+            // Step 1: Read the header with the canonical code lengths
+            long start = System.nanoTime();
+            int[] codeLengths = new int[MAX_CHAR];
+            long totalChars = readHeader(dis, codeLengths);
+
+            // Step 2: Build the lookup table straight from the lengths and decode
+            HuffmanDecoder decoder = new HuffmanDecoder(new HuffmanDecodeTable(codeLengths, MAX_CHAR), dis, totalChars);
+            long built = System.nanoTime();
+            listener.phaseCompleted(HuffmanListener.Phase.TREE_BUILD, built - start);
+
+            char[] chunk = new char[8192];
+            int n;
+            while ((n = decoder.read(chunk, 0, chunk.length)) != -1) {
+                HuffmanBlockCodec.checkCancelled();
+                writer.write(chunk, 0, n);
+            }
+            long decoded = System.nanoTime();
+            listener.phaseCompleted(HuffmanListener.Phase.DECODE, decoded - built);
+
+            writer.flush();
+            listener.phaseCompleted(HuffmanListener.Phase.FLUSH, System.nanoTime() - decoded);
+        }
+    }
+
+    // Reference decompression that walks the Huffman tree one bit at a time.
+    // Kept to cross-check the table-driven decoder in decompress.
+    static void decompressTreeWalk(Path inputFilePath, Path outputFilePath) throws IOException {
+        try (DataInputStream dis = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(inputFilePath), 8192));
+                BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath.toFile()))) {
+
+            // Step 1: Read the canonical code lengths from the header
+            int[] codeLengths = new int[MAX_CHAR];
+            long count = readHeader(dis, codeLengths);
+
+            // Step 2: Rebuild the Huffman Tree from the canonical codes
+            Node root = buildHuffmanTreeFromCodeLengths(codeLengths);
+            if (root.right == null) {
+                // At most one character is used and no bits were stored for it
+                for (long i = 0; i < count; i++) {
+                    writer.write(root.left.data);
+                }
+                return;
+            }
+
+            // Step 3: Start decoding the file
+            Node currentNode = root;
+            int bitBuffer = 0;
+            int bitCount = 0;
+            int ch;
+            long charswritten = 0;
+
+            while ((ch = dis.read()) != -1) {
+                bitBuffer = (bitBuffer << 8) | ch; // Add the next byte to the bitBuffer
+                bitCount += 8;
+
+                while (bitCount >= 1) {
+                    int bit = (bitBuffer >> (bitCount - 1)) & 1;
+                    currentNode = (bit == 0) ? currentNode.left : currentNode.right;
+                    bitCount--;
+
+                    // If leaf node is reached, output the character
+                    if (currentNode.left == null && currentNode.right == null) {
+                        writer.write(currentNode.data);
+                        charswritten += 1;
+                        currentNode = root; // Reset to root for the next character
+                    }
+                    if (charswritten == count) {
+                        break;
+                    }
+                }
+            }
+
+            writer.flush(); // Make sure everything is written to the output file
+        }
+    }
+
+    // Reads the single-stream header and returns the number of encoded characters
+    private static long readHeader(DataInputStream dis, int[] codeLengths) throws IOException {
+        if (dis.readInt() != SINGLE_STREAM_MAGIC) {
+            throw new IOException("Not a compressed file");
+        }
+        long totalChars = CanonicalHuffman.readVarLong(dis);
+        if (totalChars < 0) {
+            throw new IOException("Corrupt character count");
+        }
+        CanonicalHuffman.readCodeLengths(dis, codeLengths, MAX_CHAR);
+        return totalChars;
+    }
+
+    // Rebuilds a Huffman tree holding the canonical code of every character
+    // (used by the reference decoder)
+    private static Node buildHuffmanTreeFromCodeLengths(int[] codeLengths) {
+        long[] codes = new long[MAX_CHAR];
+        CanonicalHuffman.assignCodes(codeLengths, MAX_CHAR, codes);
+
+        Node root = new Node(0);
+        for (int i = 0; i < MAX_CHAR; i++) {
+            int length = codeLengths[i];
+            Node node = root;
+            for (int bit = length - 1; bit >= 0; bit--) {
+                boolean right = ((codes[i] >>> bit) & 1) != 0;
+                Node child = right ? node.right : node.left;
+                if (child == null) {
+                    child = bit == 0 ? new Node((char) i, 0) : new Node(0);
+                    if (right) {
+                        node.right = child;
+                    } else {
+                        node.left = child;
+                    }
+                }
+                node = child;
+            }
+        }
+        return root;
+    }
+}
@@ -0,0 +1,143 @@
+package huffman;
+
+import java.util.Arrays;
+
+// Builds Huffman trees with an array-backed min-heap. The tree lives in flat
+// primitive arrays instead of Node objects: nodes are numbered with the
+// leaves first and every merged node after them, so a node's parent always
+// has a higher number. A builder keeps its arrays between calls, so building
+// many trees allocates nothing once the arrays have grown to the largest
+// alphabet used. A builder is not thread-safe; keep one per thread.
+class HuffmanTreeBuilder {
+    private int[] leafSymbol = new int[0]; // Symbol of each leaf
+    private long[] weight = new long[0]; // Frequency of each node, the sum of its children for merged nodes
+    private int[] parent = new int[0]; // Parent of each node, then reused for the depth of each node
+    private int[] heap = new int[0]; // Min-heap of node numbers, ordered by weight
+    private int heapSize = 0;
+
+    // Builds the Huffman Tree for every symbol with a non-zero frequency and
+    // stores the depth of each leaf in codeLengths. The entries of unused
+    // symbols are not touched, so codeLengths should start out zeroed. A
+    // single used symbol still gets a one-bit code. Returns the number of
+    // used symbols.
+    int codeLengths(int[] frequencyTable, int alphabetSize, int[] codeLengths) {
+        // Step 1: Number the used symbols as the leaves of the tree
+        int used = 0;
+        for (int i = 0; i < alphabetSize; i++) {
+            if (frequencyTable[i] > 0) {
+                if (used == leafSymbol.length) {
+                    grow(Math.max(256, 2 * used));
+                }
+                leafSymbol[used++] = i;
+            }
+        }
+        if (used <= 1) {
+            if (used == 1) {
+                codeLengths[leafSymbol[0]] = 1;
+            }
+            return used;
+        }
+
+        // Step 2: Insert all leaves into the min-heap
+        heapSize = 0;
+        for (int leaf = 0; leaf < used; leaf++) {
+            weight[leaf] = frequencyTable[leafSymbol[leaf]];
+            insertHeap(leaf);
+        }
+
+        // Step 3: Repeatedly merge the two nodes with the smallest weights
+        // into a new node, until only the root remains
+        int next = used;
+        while (heapSize > 1) {
+            int node1 = extractMin();
+            int node2 = extractMin();
+            weight[next] = weight[node1] + weight[node2];
+            parent[node1] = next;
+            parent[node2] = next;
+            insertHeap(next++);
+        }
+
+        // Step 4: Walk down from the root, which has the highest number: each
+        // node is one deeper than its parent. Depths overwrite the parents,
+        // which are no longer needed once a node's depth is known
+        int root = next - 1;
+        parent[root] = 0;
+        for (int node = root - 1; node >= 0; node--) {
+            parent[node] = parent[parent[node]] + 1;
+        }
+        for (int leaf = 0; leaf < used; leaf++) {
+            codeLengths[leafSymbol[leaf]] = parent[leaf];
+        }
+        return used;
+    }
+
+    // Makes room for trees with up to 'leaves' leaves
+    private void grow(int leaves) {
+        leafSymbol = Arrays.copyOf(leafSymbol, leaves);
+        weight = new long[2 * leaves];
+        parent = new int[2 * leaves];
+        heap = new int[leaves];
+    }
+
+    // Method to insert a node into the min-heap while maintaining heap order
+    private void insertHeap(int node) {
+        heap[heapSize] = node; // Place node at the end of the heap
+        int currentIndex = heapSize++; // Save current index and increase heap size
+
+        // Bubble up the node until heap property is restored
+        while (currentIndex > 0) {
+            int parentIndex = (currentIndex - 1) / 2;
+
+            // If the current node's weight is greater than or equal to the parent's
+            if (weight[heap[currentIndex]] >= weight[heap[parentIndex]]) {
+                break;
+            }
+
+            // Otherwise, swap with parent and continue bubbling up
+            swap(currentIndex, parentIndex);
+            currentIndex = parentIndex;
+        }
+    }
+
+    // Method to extract (remove and return) the node with the minimum weight
+    // from the heap
+    private int extractMin() {
+        int minNode = heap[0]; // Root of the heap is the minimum element
+        heap[0] = heap[--heapSize]; // Replace root with last node and reduce heap size
+        heapify(0); // Restore heap property from the root downward
+        return minNode;
+    }
+
+    // Restores the min-heap property starting from a given index.
+    private void heapify(int index) {
+        while (true) {
+            int smallest = index;
+            int leftChild = 2 * index + 1; // Index of left child
+            int rightChild = 2 * index + 2; // Index of right child
+
+            // Check if left child is smaller than the current smallest
+            if (leftChild < heapSize && weight[heap[leftChild]] < weight[heap[smallest]]) {
+                smallest = leftChild;
+            }
+
+            // Check if right child is smaller than the current smallest
+            if (rightChild < heapSize && weight[heap[rightChild]] < weight[heap[smallest]]) {
+                smallest = rightChild;
+            }
+
+            // Stop once neither child is smaller, otherwise swap and continue below
+            if (smallest == index) {
+                return;
+            }
+            swap(smallest, index);
+            index = smallest;
+        }
+    }
+
+    // Swaps two nodes in the heap based on their indices
+    private void swap(int i, int j) {
+        int temp = heap[i];
+        heap[i] = heap[j];
+        heap[j] = temp;
+    }
+}
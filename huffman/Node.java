@@ -0,0 +1,21 @@
+package huffman;
+
+// Node class represents a node in the Huffman tree
+class Node {
+    int data; // The symbol stored in the node (only for leaf nodes)
+    long frequency; // Frequency of the character or sum of frequencies for internal nodes
+    Node left, right; // Left and right children in the Huffman tree
+
+    // Constructor for leaf nodes (nodes containing actual symbols)
+    Node(int data, long frequency) {
+        this.data = data; // Assign the character
+        this.frequency = frequency; // Assign the frequency
+        left = right = null;
+    }
+
+    // Constructor for internal nodes (no character, only combined frequency)
+    Node(long frequency) {
+        this.frequency = frequency; // Assign the combined frequency
+        left = right = null;
+    }
+}
@@ -0,0 +1,50 @@
+package huffman;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+// Reports the bytes read through it to a listener, and stops the job with an
+// InterruptedIOException once the reading thread has been interrupted, so a
+// cancelled job does not have to wait for the rest of its input.
+class ProgressInputStream extends FilterInputStream {
+    private final HuffmanListener listener;
+
+    ProgressInputStream(InputStream in, HuffmanListener listener) {
+        super(in);
+        this.listener = listener;
+    }
+
+    @Override
+    public int read() throws IOException {
+        HuffmanBlockCodec.checkCancelled();
+        int b = in.read();
+        if (b != -1) {
+            listener.bytesProcessed(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        HuffmanBlockCodec.checkCancelled();
+        int n = in.read(b, off, len);
+        if (n > 0) {
+            listener.bytesProcessed(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = in.skip(n);
+        listener.bytesProcessed(skipped);
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false; // Re-reading after reset would be counted twice
+    }
+}
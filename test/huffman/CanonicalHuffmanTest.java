@@ -0,0 +1,196 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// Variable-length counts, the scaling of 64-bit frequencies and the
+// package-merge code length limit
+class CanonicalHuffmanTest {
+
+    @Test
+    void varLongRoundTrip() throws IOException {
+        long[] values = { 0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, 1L << 31, (1L << 35) + 5,
+                Long.MAX_VALUE };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        for (long value : values) {
+            CanonicalHuffman.writeVarLong(dos, value);
+        }
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (long value : values) {
+            assertEquals(value, CanonicalHuffman.readVarLong(dis));
+        }
+        assertEquals(-1, dis.read());
+    }
+
+    @Test
+    void smallFrequenciesAreNotScaled() {
+        long[] frequencies = { 0, 5, 1, 1000, 0, 70_000 };
+        int[] scaled = CanonicalHuffman.scaleFrequencies(frequencies, frequencies.length);
+        for (int i = 0; i < frequencies.length; i++) {
+            assertEquals(frequencies[i], scaled[i]);
+        }
+    }
+
+    @Test
+    void largeFrequenciesFitAnIntAndKeepEverySymbol() {
+        long[] frequencies = new long[256];
+        frequencies[0] = 5_000_000_000L;
+        frequencies[1] = 3_000_000_000L;
+        frequencies[2] = 1;
+        frequencies[200] = 12_345;
+        int[] scaled = CanonicalHuffman.scaleFrequencies(frequencies, frequencies.length);
+        long total = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            assertEquals(frequencies[i] == 0, scaled[i] == 0, "symbol " + i);
+            total += scaled[i];
+        }
+        assertTrue(total <= Integer.MAX_VALUE);
+        assertTrue(scaled[0] > scaled[1] && scaled[1] > scaled[200] && scaled[200] >= scaled[2]);
+    }
+
+    @Test
+    void limitedLengthsAreOptimal() {
+        // Against every choice of lengths on small alphabets
+        Random random = new Random(1);
+        for (int trial = 0; trial < 300; trial++) {
+            int symbols = 2 + random.nextInt(6);
+            int[] frequencies = new int[symbols];
+            for (int i = 0; i < symbols; i++) {
+                frequencies[i] = random.nextInt(4) == 0 ? 0 : 1 + random.nextInt(1 << random.nextInt(12));
+            }
+            int used = (int) Arrays.stream(frequencies).filter(f -> f != 0).count();
+            int floor = used <= 1 ? 1 : 32 - Integer.numberOfLeadingZeros(used - 1);
+            for (int limit = floor; limit <= used; limit++) {
+                int[] lengths = limited(frequencies, limit);
+                assertValidCode(frequencies, lengths, limit);
+                assertEquals(bruteForceBits(frequencies, limit),
+                        CanonicalHuffman.encodedBits(frequencies, lengths, symbols),
+                        Arrays.toString(frequencies) + " limited to " + limit);
+            }
+        }
+    }
+
+    @Test
+    void limitedLengthsBeatClampingOnSkewedInput() {
+        // Fibonacci frequencies give the deepest possible tree
+        int[] frequencies = new int[40];
+        frequencies[0] = 1;
+        frequencies[1] = 1;
+        for (int i = 2; i < frequencies.length; i++) {
+            frequencies[i] = frequencies[i - 1] + frequencies[i - 2];
+        }
+        Random random = new Random(2);
+        int[] skewed = new int[HuffmanBlockCodec.BYTE_ALPHABET];
+        for (int i = 0; i < 100_000; i++) {
+            int r = random.nextInt(256);
+            skewed[r * r * r / (256 * 256)]++;
+        }
+        skewed[255] = 1;
+        for (int[] table : new int[][] { frequencies, skewed }) {
+            for (int limit = 8; limit <= 20; limit++) {
+                int[] lengths = limited(table, limit);
+                assertValidCode(table, lengths, limit);
+                assertTrue(CanonicalHuffman.encodedBits(table, lengths, table.length)
+                        <= CanonicalHuffman.encodedBits(table, clamped(table, limit), table.length),
+                        "limit " + limit);
+            }
+        }
+    }
+
+    @Test
+    void limitIsRaisedToFitEverySymbol() {
+        int[] frequencies = new int[300];
+        Arrays.fill(frequencies, 1);
+        frequencies[0] = 1_000_000;
+        int[] lengths = limited(frequencies, 4);
+        assertValidCode(frequencies, lengths, 9); // 300 symbols need 9 bits
+    }
+
+    // Returns the tree's code lengths, limited to 'limit' bits
+    private static int[] limited(int[] frequencies, int limit) {
+        int[] lengths = new int[frequencies.length];
+        new HuffmanTreeBuilder().codeLengths(frequencies, frequencies.length, lengths);
+        CanonicalHuffman.limitCodeLengths(frequencies, lengths, frequencies.length, limit);
+        return lengths;
+    }
+
+    // Checks that every used symbol, and no other, has a code of at most
+    // 'limit' bits and that the codes fill the code space exactly
+    private static void assertValidCode(int[] frequencies, int[] lengths, int limit) {
+        long kraft = 0; // In units of 2^-limit
+        int used = 0;
+        for (int i = 0; i < frequencies.length; i++) {
+            assertEquals(frequencies[i] != 0, lengths[i] != 0, "symbol " + i);
+            assertTrue(lengths[i] <= limit, "symbol " + i + " has " + lengths[i] + " bits");
+            if (lengths[i] != 0) {
+                kraft += 1L << (limit - lengths[i]);
+                used++;
+            }
+        }
+        if (used > 1) {
+            assertEquals(1L << limit, kraft, "Kraft sum");
+        }
+    }
+
+    // Returns the fewest bits of any prefix code with lengths of at most 'limit'
+    private static long bruteForceBits(int[] frequencies, int limit) {
+        int[] lengths = new int[frequencies.length];
+        return bruteForce(frequencies, limit, lengths, 0, 0);
+    }
+
+    private static long bruteForce(int[] frequencies, int limit, int[] lengths, int symbol, long kraft) {
+        if (kraft > 1L << limit) {
+            return Long.MAX_VALUE;
+        }
+        if (symbol == frequencies.length) {
+            return CanonicalHuffman.encodedBits(frequencies, lengths, frequencies.length);
+        }
+        if (frequencies[symbol] == 0) {
+            lengths[symbol] = 0;
+            return bruteForce(frequencies, limit, lengths, symbol + 1, kraft);
+        }
+        long best = Long.MAX_VALUE;
+        for (int length = 1; length <= limit; length++) {
+            lengths[symbol] = length;
+            long bits = bruteForce(frequencies, limit, lengths, symbol + 1, kraft + (1L << (limit - length)));
+            best = Math.min(best, bits);
+        }
+        return best;
+    }
+
+    // The usual heuristic: cut long codes to the limit, then lengthen the
+    // longest codes still below it until the Kraft sum fits again
+    private static int[] clamped(int[] frequencies, int limit) {
+        int[] lengths = new int[frequencies.length];
+        new HuffmanTreeBuilder().codeLengths(frequencies, frequencies.length, lengths);
+        long kraft = 0;
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] != 0) {
+                lengths[i] = Math.min(lengths[i], limit);
+                kraft += 1L << (limit - lengths[i]);
+            }
+        }
+        while (kraft > 1L << limit) {
+            int longest = -1;
+            for (int i = 0; i < lengths.length; i++) {
+                if (lengths[i] != 0 && lengths[i] < limit && (longest < 0 || lengths[i] > lengths[longest])) {
+                    longest = i;
+                }
+            }
+            kraft -= 1L << (limit - lengths[longest] - 1);
+            lengths[longest]++;
+        }
+        return lengths;
+    }
+}
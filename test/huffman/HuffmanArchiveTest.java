@@ -0,0 +1,105 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Folder archives: create, list, extract one entry or all of them
+class HuffmanArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    private Path source;
+
+    @BeforeEach
+    void createSourceTree() throws IOException {
+        source = dir.resolve("source");
+        Files.createDirectories(source.resolve("logs/old"));
+        Files.write(source.resolve("empty.bin"), new byte[0]);
+        Files.write(source.resolve("notes.txt"), TestData.skewedText(50_000, 1).getBytes("US-ASCII"));
+        Files.write(source.resolve("logs/random.bin"), TestData.randomBytes(100_000, 2));
+        // Larger than the entries kept in memory, so it goes through a temporary file
+        Files.write(source.resolve("logs/old/large.bin"), TestData.skewedBytes((8 << 20) + 1, 3));
+    }
+
+    @Test
+    void createListAndExtractAll() throws IOException {
+        Path archiveFile = dir.resolve("source.huf");
+        List<HuffmanArchive.Entry> created = archiver(2).create(source, archiveFile);
+        assertTrue(HuffmanArchive.isArchive(archiveFile));
+
+        List<HuffmanArchive.Entry> listed = HuffmanArchive.list(archiveFile);
+        assertEquals(List.of("empty.bin", "logs/old/large.bin", "logs/random.bin", "notes.txt"),
+                listed.stream().map(HuffmanArchive.Entry::name).collect(Collectors.toList()));
+        assertEquals(created.size(), listed.size());
+        for (HuffmanArchive.Entry entry : listed) {
+            assertEquals(Files.size(source.resolve(entry.name())), entry.originalSize());
+        }
+
+        Path target = dir.resolve("target");
+        archiver(1).extractAll(archiveFile, target);
+        for (Path file : HuffmanArchive.listFiles(source)) {
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(target.resolve(source.relativize(file))));
+        }
+    }
+
+    @Test
+    void extractOneEntry() throws IOException {
+        Path archiveFile = dir.resolve("source.huf");
+        HuffmanArchive archive = archiver(4);
+        archive.create(source, archiveFile);
+        Path target = dir.resolve("random.bin");
+        archive.extract(archiveFile, "logs/random.bin", target);
+        assertArrayEquals(Files.readAllBytes(source.resolve("logs/random.bin")), Files.readAllBytes(target));
+        assertThrows(FileNotFoundException.class, () -> archive.extract(archiveFile, "missing", target));
+    }
+
+    @Test
+    void archiveInsideTheSourceIsSkipped() throws IOException {
+        Path archiveFile = source.resolve("self.huf");
+        archiver(2).create(source, archiveFile);
+        assertFalse(HuffmanArchive.list(archiveFile).stream().anyMatch(entry -> entry.name().equals("self.huf")));
+    }
+
+    @Test
+    void corruptEntryFailsItsChecksum() throws IOException {
+        Path archiveFile = dir.resolve("source.huf");
+        HuffmanArchive archive = new HuffmanArchive(new HuffmanCodec(), 1); // Stored blocks for the random file
+        archive.create(source, archiveFile);
+        HuffmanArchive.Entry entry = HuffmanArchive.list(archiveFile).stream()
+                .filter(e -> e.name().equals("logs/random.bin")).findFirst().orElseThrow();
+        byte[] bytes = Files.readAllBytes(archiveFile);
+        bytes[(int) (entry.offset() + entry.compressedSize() / 2)] ^= 0x10;
+        Files.write(archiveFile, bytes);
+        assertThrows(IOException.class, () -> archive.extract(archiveFile, entry.name(), dir.resolve("out.bin")));
+    }
+
+    @Test
+    void otherFilesAreNotArchives() throws IOException {
+        assertFalse(HuffmanArchive.isArchive(source.resolve("notes.txt")));
+        assertFalse(HuffmanArchive.isArchive(source.resolve("empty.bin")));
+    }
+
+    // An archiver whose codec uses small blocks and the LZ77 stage
+    private static HuffmanArchive archiver(int threads) {
+        HuffmanBlockOptions options = new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, false, 1,
+                HuffmanBlockOptions.DEFAULT_LZ_WINDOW_BITS, HuffmanBlockOptions.DEFAULT_MIN_SAVING_PERCENT);
+        return new HuffmanArchive(new HuffmanCodec(1 << 18, options, ForkJoinPool.commonPool(),
+                HuffmanListener.NONE), threads);
+    }
+}
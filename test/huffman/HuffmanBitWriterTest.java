@@ -0,0 +1,151 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The 64-bit bit writer against a writer that appends one bit at a time
+class HuffmanBitWriterTest {
+
+    @Test
+    void randomCodesOfEveryLength() throws IOException {
+        Random random = new Random(1);
+        long[] codes = new long[5000];
+        int[] lengths = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            lengths[i] = 1 + random.nextInt(64);
+            codes[i] = random.nextLong() >>> (64 - lengths[i]);
+        }
+        for (int bufferSize : new int[] { 0, 1, 8, 13, 64, 8192 }) {
+            assertArrayEquals(reference(codes, lengths), write(codes, lengths, bufferSize), "buffer " + bufferSize);
+        }
+    }
+
+    @Test
+    void codesStraddlingTheWordBoundary() throws IOException {
+        // Every split of a code between the end of one word and the next
+        for (int before = 1; before < 64; before++) {
+            for (int length : new int[] { 2, 7, 15, 33, 64 }) {
+                long[] codes = { (1L << before) - 1, 0x5555_5555_5555_5555L >>> (64 - length), 1 };
+                int[] lengths = { before, length, 1 };
+                assertArrayEquals(reference(codes, lengths), write(codes, lengths, 8192),
+                        before + " bits, then " + length);
+            }
+        }
+    }
+
+    @Test
+    void fortyEightBitCodes() throws IOException {
+        // CanonicalHuffman.MAX_CODE_LENGTH: a code of the longest kind over
+        // every offset within a word
+        long[] codes = new long[200];
+        int[] lengths = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            lengths[i] = i % 3 == 2 ? 1 + i % 17 : CanonicalHuffman.MAX_CODE_LENGTH;
+            codes[i] = (0xF0E1_D2C3_B4A5_9687L * (i + 1)) >>> (64 - lengths[i]);
+        }
+        assertArrayEquals(reference(codes, lengths), write(codes, lengths, 8192));
+    }
+
+    @Test
+    void finishPadsToAWholeByte() throws IOException {
+        assertArrayEquals(new byte[0], write(new long[0], new int[0], 8192));
+        assertArrayEquals(new byte[] { (byte) 0xA0 }, write(new long[] { 0b101 }, new int[] { 3 }, 8192));
+        assertArrayEquals(new byte[] { (byte) 0xFF, (byte) 0x80 },
+                write(new long[] { 0x1FF }, new int[] { 9 }, 8192));
+        // A whole word needs no padding byte
+        assertArrayEquals(new byte[] { 0, 0, 0, 0, 0, 0, 0, 1 }, write(new long[] { 1 }, new int[] { 64 }, 8192));
+        assertArrayEquals(new byte[] { 0, 0, 0, 0, 0, 0, 0, 0, (byte) 0x80 },
+                write(new long[] { 0, 1 }, new int[] { 64, 1 }, 8192));
+    }
+
+    @Test
+    void resetDropsPendingBits() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HuffmanBitWriter writer = new HuffmanBitWriter(out);
+        writer.write(0x3FFFF, 18);
+        writer.write(-1L, 64); // Staged in the buffer, not yet written out
+        writer.reset();
+        writer.write(0b1, 1);
+        writer.finish();
+        assertArrayEquals(new byte[] { (byte) 0x80 }, out.toByteArray());
+
+        // The writer can be finished and reused for a second stream
+        out.reset();
+        writer.write(0b11, 2);
+        writer.finish();
+        writer.reset();
+        writer.write(0b01, 2);
+        writer.finish();
+        assertArrayEquals(new byte[] { (byte) 0xC0, 0x40 }, out.toByteArray());
+    }
+
+    @Test
+    void bufferSizeIsRoundedUpToWholeWords() throws IOException {
+        long[] codes = new long[40];
+        int[] lengths = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            codes[i] = i;
+            lengths[i] = 64;
+        }
+        int[][] expected = { { 0, 8 }, { 1, 8 }, { 8, 8 }, { 9, 16 }, { 16, 16 }, { 100, 104 } };
+        for (int[] sizes : expected) {
+            List<Integer> writes = new ArrayList<>();
+            ByteArrayOutputStream out = new ByteArrayOutputStream() {
+                @Override
+                public synchronized void write(byte[] b, int off, int len) {
+                    writes.add(len);
+                    super.write(b, off, len);
+                }
+            };
+            HuffmanBitWriter writer = new HuffmanBitWriter(out, sizes[0]);
+            for (int i = 0; i < codes.length; i++) {
+                writer.write(codes[i], lengths[i]);
+            }
+            writer.finish();
+            assertArrayEquals(reference(codes, lengths), out.toByteArray());
+            int largest = writes.stream().mapToInt(Integer::intValue).max().orElse(0);
+            assertEquals(sizes[1], largest, "buffer size " + sizes[0]);
+            assertTrue(writes.size() >= 320 / sizes[1], "buffer size " + sizes[0]);
+        }
+    }
+
+    private static byte[] write(long[] codes, int[] lengths, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HuffmanBitWriter writer = new HuffmanBitWriter(out, bufferSize);
+        for (int i = 0; i < codes.length; i++) {
+            writer.write(codes[i], lengths[i]);
+        }
+        writer.finish();
+        return out.toByteArray();
+    }
+
+    // Appends the codes most significant bit first, one bit at a time
+    private static byte[] reference(long[] codes, int[] lengths) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int current = 0;
+        int bits = 0;
+        for (int i = 0; i < codes.length; i++) {
+            for (int b = lengths[i] - 1; b >= 0; b--) {
+                current = current << 1 | (int) (codes[i] >>> b & 1);
+                if (++bits == 8) {
+                    out.write(current);
+                    current = 0;
+                    bits = 0;
+                }
+            }
+        }
+        if (bits > 0) {
+            out.write(current << (8 - bits));
+        }
+        return out.toByteArray();
+    }
+}
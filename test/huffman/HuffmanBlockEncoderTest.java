@@ -0,0 +1,127 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// An encoder reused across blocks of every kind must write what a fresh
+// encoder writes for each of them
+class HuffmanBlockEncoderTest {
+
+    private static final HuffmanBlockOptions INTERLEAVED =
+            new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, true);
+    private static final HuffmanBlockOptions LZ77 = new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH,
+            false, HuffmanBlockOptions.DEFAULT_LZ_LEVEL, HuffmanBlockOptions.DEFAULT_LZ_WINDOW_BITS,
+            HuffmanBlockOptions.DEFAULT_MIN_SAVING_PERCENT);
+
+    @Test
+    void reusedEncoderMatchesFreshOnes() throws IOException {
+        HuffmanBlockEncoder encoder = new HuffmanBlockEncoder();
+        for (int round = 0; round < 2; round++) {
+            assertSameAsFresh(encoder, wideText(200_000, 1), HuffmanBlockCodec.MAX_CHAR, HuffmanBlockOptions.DEFAULT);
+            assertSameAsFresh(encoder, bytes(50_000, 2), HuffmanBlockCodec.BYTE_ALPHABET,
+                    HuffmanBlockOptions.DEFAULT);
+            assertSameAsFresh(encoder, logBytes(80_000), HuffmanBlockCodec.BYTE_ALPHABET, LZ77);
+            assertSameAsFresh(encoder, bytes(60_000, 3), HuffmanBlockCodec.BYTE_ALPHABET, INTERLEAVED);
+            assertSameAsFresh(encoder, new char[] { 'x', 'x', 'x' }, HuffmanBlockCodec.BYTE_ALPHABET,
+                    HuffmanBlockOptions.DEFAULT);
+        }
+    }
+
+    @Test
+    void blockAfterAFailedEncodeMatchesAFreshOne() throws IOException {
+        char[] text = wideText(100_000, 4);
+        char[] data = bytes(40_000, 5);
+        for (HuffmanListener.Phase phase : HuffmanListener.Phase.values()) {
+            for (HuffmanBlockOptions options : new HuffmanBlockOptions[] { HuffmanBlockOptions.DEFAULT, INTERLEAVED,
+                    LZ77 }) {
+                HuffmanBlockEncoder encoder = new HuffmanBlockEncoder();
+                encoder.encode(text, text.length, HuffmanBlockCodec.MAX_CHAR, HuffmanBlockOptions.DEFAULT,
+                        HuffmanListener.NONE);
+                try {
+                    encoder.encode(logBytes(70_000), 70_000, HuffmanBlockCodec.BYTE_ALPHABET, options,
+                            failingAt(phase));
+                } catch (IllegalStateException e) {
+                    // The phase was reached and the encode gave up part way
+                }
+                assertSameAsFresh(encoder, data, HuffmanBlockCodec.BYTE_ALPHABET, options);
+                assertSameAsFresh(encoder, text, HuffmanBlockCodec.MAX_CHAR, HuffmanBlockOptions.DEFAULT);
+            }
+        }
+    }
+
+    @Test
+    void threadEncoderMatchesFreshOnes() throws IOException {
+        // encodeBlock reuses the calling thread's encoder
+        char[] text = wideText(150_000, 6);
+        char[] data = bytes(30_000, 7);
+        char[] log = logBytes(50_000);
+        for (int round = 0; round < 2; round++) {
+            assertArrayEquals(fresh(text, HuffmanBlockCodec.MAX_CHAR, HuffmanBlockOptions.DEFAULT),
+                    HuffmanBlockCodec.encodeBlock(text, text.length, HuffmanBlockCodec.MAX_CHAR,
+                            HuffmanBlockOptions.DEFAULT, HuffmanListener.NONE));
+            assertArrayEquals(fresh(log, HuffmanBlockCodec.BYTE_ALPHABET, LZ77), HuffmanBlockCodec.encodeBlock(log,
+                    log.length, HuffmanBlockCodec.BYTE_ALPHABET, LZ77, HuffmanListener.NONE));
+            assertThrows(IllegalStateException.class, () -> HuffmanBlockCodec.encodeBlock(data, data.length,
+                    HuffmanBlockCodec.BYTE_ALPHABET, INTERLEAVED, failingAt(HuffmanListener.Phase.TREE_BUILD)));
+            assertArrayEquals(fresh(data, HuffmanBlockCodec.BYTE_ALPHABET, INTERLEAVED),
+                    HuffmanBlockCodec.encodeBlock(data, data.length, HuffmanBlockCodec.BYTE_ALPHABET, INTERLEAVED,
+                            HuffmanListener.NONE));
+        }
+    }
+
+    private static void assertSameAsFresh(HuffmanBlockEncoder encoder, char[] data, int alphabetSize,
+            HuffmanBlockOptions options) throws IOException {
+        encoder.encode(data, data.length, alphabetSize, options, HuffmanListener.NONE);
+        byte[] payload = encoder.toPayload();
+        assertArrayEquals(fresh(data, alphabetSize, options), payload);
+        assertArrayEquals(data, HuffmanBlockCodec.decodeBlock(payload, data.length, alphabetSize,
+                options.layout(alphabetSize), HuffmanListener.NONE));
+    }
+
+    private static byte[] fresh(char[] data, int alphabetSize, HuffmanBlockOptions options) throws IOException {
+        HuffmanBlockEncoder encoder = new HuffmanBlockEncoder();
+        encoder.encode(data, data.length, alphabetSize, options, HuffmanListener.NONE);
+        return encoder.toPayload();
+    }
+
+    // A listener that gives up when the given phase completes
+    private static HuffmanListener failingAt(HuffmanListener.Phase failingPhase) {
+        return new HuffmanListener() {
+            @Override
+            public void phaseCompleted(Phase phase, long nanos) {
+                if (phase == failingPhase) {
+                    throw new IllegalStateException("Stopped after " + phase);
+                }
+            }
+        };
+    }
+
+    // Characters from all over the 65536-symbol alphabet, most of them from
+    // a small range so the block is coded rather than stored
+    private static char[] wideText(int length, long seed) {
+        Random random = new Random(seed);
+        char[] text = new char[length];
+        for (int i = 0; i < length; i++) {
+            text[i] = random.nextInt(4) == 0 ? (char) random.nextInt(65536) : (char) ('a' + random.nextInt(8));
+        }
+        return text;
+    }
+
+    private static char[] bytes(int length, long seed) {
+        return TestData.widen(TestData.skewedBytes(length, seed));
+    }
+
+    private static char[] logBytes(int length) {
+        char[] data = new char[length];
+        String line = "GET /index.html 200\n";
+        for (int i = 0; i < length; i++) {
+            data[i] = i % 97 == 0 ? (char) (i % 251) : line.charAt(i % line.length());
+        }
+        return data;
+    }
+}
@@ -0,0 +1,158 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The run-length code length table and the checks made on the lengths read
+// back from it
+class HuffmanCodeLengthsTest {
+
+    @Test
+    void byteAlphabetRoundTrip() throws IOException {
+        int[] frequencies = new int[HuffmanBlockCodec.BYTE_ALPHABET];
+        byte[] data = TestData.skewedBytes(50_000, 1);
+        for (byte b : data) {
+            frequencies[b & 0xFF]++;
+        }
+        assertRoundTrip(codeLengths(frequencies), HuffmanBlockCodec.BYTE_ALPHABET);
+    }
+
+    @Test
+    void fullAlphabetRoundTrip() throws IOException {
+        // Long runs of unused symbols between a few used ranges, so the run
+        // lengths need several varint bytes
+        int[] frequencies = new int[HuffmanBlockCodec.MAX_CHAR];
+        Random random = new Random(2);
+        for (int i = 0; i < 300; i++) {
+            frequencies['a' + i % 26] += 1 + random.nextInt(1000);
+            frequencies[0x4E00 + i] = 1 + random.nextInt(5);
+        }
+        frequencies[HuffmanBlockCodec.MAX_CHAR - 1] = 7;
+        int[] lengths = codeLengths(frequencies);
+        assertRoundTrip(lengths, HuffmanBlockCodec.MAX_CHAR);
+
+        // A run of 1024 equal lengths followed by one of 64512 zeros
+        int[] runs = new int[HuffmanBlockCodec.MAX_CHAR];
+        for (int i = 0; i < 1024; i++) {
+            runs[i] = 10;
+        }
+        assertRoundTrip(runs, HuffmanBlockCodec.MAX_CHAR);
+        new HuffmanDecodeTable(runs, HuffmanBlockCodec.MAX_CHAR);
+    }
+
+    @Test
+    void longestCodesRoundTrip() throws IOException {
+        // One code of every length up to MAX_CODE_LENGTH, and a second one of
+        // the longest to complete the code space
+        int[] lengths = new int[HuffmanBlockCodec.BYTE_ALPHABET];
+        for (int i = 0; i < CanonicalHuffman.MAX_CODE_LENGTH; i++) {
+            lengths[i] = i + 1;
+        }
+        lengths[CanonicalHuffman.MAX_CODE_LENGTH] = CanonicalHuffman.MAX_CODE_LENGTH;
+        assertRoundTrip(lengths, HuffmanBlockCodec.BYTE_ALPHABET);
+        HuffmanDecodeTable table = new HuffmanDecodeTable(lengths, HuffmanBlockCodec.BYTE_ALPHABET);
+        assertEquals(CanonicalHuffman.MAX_CODE_LENGTH, table.maxLength);
+    }
+
+    @Test
+    void oversubscribedLengthsFail() {
+        // Three 1-bit codes, and a complete code plus one more symbol
+        int[] threeOneBit = lengths(1, 1, 1);
+        assertThrows(IOException.class, () -> new HuffmanDecodeTable(threeOneBit, threeOneBit.length));
+        int[] oneTooMany = lengths(1, 2, 3, 3, 3);
+        assertThrows(IOException.class, () -> new HuffmanDecodeTable(oneTooMany, oneTooMany.length));
+    }
+
+    @Test
+    void incompleteLengthsFail() {
+        // Two 2-bit codes leave half of the code space without a symbol
+        int[] half = lengths(2, 0, 2);
+        assertThrows(IOException.class, () -> new HuffmanDecodeTable(half, half.length));
+        int[] missingLongest = lengths(1, 2, 3, 0, 4);
+        assertThrows(IOException.class, () -> new HuffmanDecodeTable(missingLongest, missingLongest.length));
+    }
+
+    @Test
+    void completeAndSingleSymbolLengthsAreAccepted() throws IOException {
+        new HuffmanDecodeTable(lengths(1, 2, 3, 3), 4);
+        new HuffmanDecodeTable(lengths(0, 0, 0), 3);
+        HuffmanDecodeTable single = new HuffmanDecodeTable(lengths(0, 1, 0), 3);
+        assertEquals(1, single.singleSymbol);
+    }
+
+    @Test
+    void runOverrunningTheAlphabetFails() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeByte(8);
+        CanonicalHuffman.writeVarInt(dos, 199); // 200 symbols
+        dos.writeByte(8);
+        CanonicalHuffman.writeVarInt(dos, 56); // 57 more, one past the end
+        assertCorrupt(bytes.toByteArray(), HuffmanBlockCodec.BYTE_ALPHABET);
+
+        // A run that wraps around to a negative count
+        bytes.reset();
+        dos.writeByte(8);
+        CanonicalHuffman.writeVarInt(dos, Integer.MAX_VALUE);
+        assertCorrupt(bytes.toByteArray(), HuffmanBlockCodec.BYTE_ALPHABET);
+    }
+
+    @Test
+    void lengthAboveTheLimitFails() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeByte(CanonicalHuffman.MAX_CODE_LENGTH + 1);
+        CanonicalHuffman.writeVarInt(dos, 255);
+        assertCorrupt(bytes.toByteArray(), HuffmanBlockCodec.BYTE_ALPHABET);
+    }
+
+    @Test
+    void truncatedTableFails() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeByte(8);
+        CanonicalHuffman.writeVarInt(dos, 99); // Only 100 of 256 symbols
+        assertThrows(IOException.class, () -> read(bytes.toByteArray(), HuffmanBlockCodec.BYTE_ALPHABET));
+    }
+
+    private static void assertRoundTrip(int[] lengths, int alphabetSize) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CanonicalHuffman.writeCodeLengths(new DataOutputStream(bytes), lengths, alphabetSize);
+        assertArrayEquals(lengths, read(bytes.toByteArray(), alphabetSize));
+    }
+
+    private static void assertCorrupt(byte[] table, int alphabetSize) {
+        IOException e = assertThrows(IOException.class, () -> read(table, alphabetSize));
+        assertEquals("Corrupt code length table", e.getMessage());
+    }
+
+    // Reads a table and checks that nothing follows it
+    private static int[] read(byte[] table, int alphabetSize) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(table));
+        int[] lengths = new int[alphabetSize];
+        CanonicalHuffman.readCodeLengths(dis, lengths, alphabetSize);
+        assertEquals(-1, dis.read());
+        return lengths;
+    }
+
+    private static int[] codeLengths(int[] frequencies) {
+        int[] lengths = new int[frequencies.length];
+        CanonicalHuffman.limitCodeLengths(frequencies, lengths, frequencies.length,
+                CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH);
+        return lengths;
+    }
+
+    private static int[] lengths(int... lengths) {
+        return lengths;
+    }
+}
@@ -0,0 +1,141 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Small records compressed with a pretrained dictionary
+class HuffmanDictionaryTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void byteRecords() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(samples());
+        for (byte[] record : samples()) {
+            byte[] compressed = dictionary.compress(record);
+            assertEquals(dictionary.id(), HuffmanDictionary.recordDictionaryId(compressed));
+            assertArrayEquals(record, dictionary.decompress(compressed));
+        }
+    }
+
+    @Test
+    void recordsShrink() {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(samples());
+        byte[] record = "{\"user\":\"alice\",\"action\":\"login\",\"ok\":true}".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(dictionary.compress(record).length < record.length);
+    }
+
+    @Test
+    void unseenSymbolsAreEscaped() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(samples());
+        byte[] record = new byte[256];
+        for (int i = 0; i < record.length; i++) {
+            record[i] = (byte) i;
+        }
+        assertArrayEquals(record, dictionary.decompress(dictionary.compress(record)));
+        assertArrayEquals(new byte[0], dictionary.decompress(dictionary.compress(new byte[0])));
+    }
+
+    @Test
+    void textRecords() throws IOException {
+        List<String> samples = List.of("héllo wörld", "hello world", "ハロー");
+        HuffmanDictionary dictionary = HuffmanDictionary.trainText(samples, 16);
+        for (String record : List.of("hello wörld", "ハローworld", "\u0000\uffff", "")) {
+            assertEquals(record, dictionary.decompressText(dictionary.compress(record)));
+        }
+    }
+
+    @Test
+    void saveAndLoadKeepTheId() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(samples(), 12);
+        Path file = dir.resolve("records.dict");
+        dictionary.save(file);
+        HuffmanDictionary loaded = HuffmanDictionary.load(file);
+        assertEquals(dictionary.id(), loaded.id());
+        byte[] record = samples().get(3);
+        assertArrayEquals(record, loaded.decompress(dictionary.compress(record)));
+    }
+
+    @Test
+    void rejectsRecordsOfAnotherDictionary() {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(samples());
+        HuffmanDictionary other = HuffmanDictionary.train(List.of(new byte[] { 1, 2, 3 }));
+        byte[] compressed = other.compress(new byte[] { 1, 2, 3 });
+        assertThrows(IOException.class, () -> dictionary.decompress(compressed));
+    }
+
+    @Test
+    void rejectsCorruptFiles() throws IOException {
+        Path file = dir.resolve("corrupt.dict");
+        HuffmanDictionary.train(samples()).save(file);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[5] ^= 1; // Inside the id
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> HuffmanDictionary.load(file));
+    }
+
+    @Test
+    void rejectsRecordsOfTheWrongMode() {
+        HuffmanDictionary text = HuffmanDictionary.trainText(List.of("abc"), 12);
+        assertThrows(IllegalStateException.class, () -> text.compress(new byte[] { 'a' }));
+    }
+
+    @Test
+    void rejectsCountsLongerThanTheRecord() throws IOException {
+        HuffmanDictionary dictionary = HuffmanDictionary.train(samples());
+        byte[] compressed = dictionary.compress(samples().get(0));
+        for (int count : new int[] { Integer.MAX_VALUE, 8 * (compressed.length - 5) + 1 }) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bytes);
+            dos.writeInt(dictionary.id());
+            CanonicalHuffman.writeVarInt(dos, count);
+            dos.write(compressed, 5, compressed.length - 5); // The original bitstream
+            assertThrows(IOException.class, () -> dictionary.decompress(bytes.toByteArray()), "count " + count);
+        }
+    }
+
+    @Test
+    void trainsOnMoreThanTheIntRange() throws IOException {
+        // The same sample over and over: 2^31 + 2^21 symbols in all
+        byte[] sample = new byte[1 << 20];
+        Arrays.fill(sample, (byte) 'a');
+        sample[0] = 'b';
+        HuffmanDictionary dictionary = HuffmanDictionary.train(Collections.nCopies(2050, sample));
+        byte[] common = new byte[64];
+        byte[] rare = new byte[64];
+        Arrays.fill(common, (byte) 'a');
+        Arrays.fill(rare, (byte) 'b');
+        assertArrayEquals(common, dictionary.decompress(dictionary.compress(common)));
+        assertArrayEquals(rare, dictionary.decompress(dictionary.compress(rare)));
+        assertTrue(dictionary.compress(common).length < dictionary.compress(rare).length);
+    }
+
+    private static List<byte[]> samples() {
+        List<byte[]> samples = new ArrayList<>();
+        String[] users = { "alice", "bob", "carol", "dave" };
+        String[] actions = { "login", "logout", "view", "purchase" };
+        for (int i = 0; i < 40; i++) {
+            String record = "{\"user\":\"" + users[i % users.length] + "\",\"action\":\""
+                    + actions[i / users.length % actions.length] + "\",\"ok\":" + (i % 5 != 0) + "}";
+            samples.add(record.getBytes(StandardCharsets.US_ASCII));
+        }
+        return samples;
+    }
+}
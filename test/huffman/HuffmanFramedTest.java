@@ -0,0 +1,138 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+// The block-framed format: parallel round trips and corrupt frames
+class HuffmanFramedTest {
+
+    private static final int BLOCK_SIZE = 65536;
+    private static final int HEADER_SIZE = 12; // Magic, alphabet size, block size
+
+    private final ExecutorService pool = new ForkJoinPool(4);
+
+    @AfterEach
+    void shutdownPool() throws InterruptedException {
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void blocksInFlightOnAPrivatePool() throws IOException {
+        // More blocks than workers, so several are encoded and decoded at once
+        byte[] data = TestData.skewedBytes(20 * BLOCK_SIZE + 777, 1);
+        for (HuffmanBlockOptions options : layouts()) {
+            HuffmanCodec codec = new HuffmanCodec(BLOCK_SIZE, options, pool, HuffmanListener.NONE);
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            codec.compress(new ByteArrayInputStream(data), compressed);
+            ByteArrayOutputStream restored = new ByteArrayOutputStream();
+            codec.decompress(new ByteArrayInputStream(compressed.toByteArray()), restored);
+            assertArrayEquals(data, restored.toByteArray());
+            assertEquals(ByteBuffer.wrap(data), codec.decompress(codec.compress(ByteBuffer.wrap(data))));
+        }
+    }
+
+    @Test
+    void textBlocksInFlightOnAPrivatePool() throws IOException {
+        String text = TestData.skewedText(12 * BLOCK_SIZE + 99, 2);
+        HuffmanCodec codec = new HuffmanCodec(BLOCK_SIZE, pool);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        codec.compress(new StringReader(text), compressed);
+        ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        codec.decompress(new ByteArrayInputStream(compressed.toByteArray()), restored);
+        assertEquals(text, restored.toString(Charset.defaultCharset()));
+    }
+
+    @Test
+    void blocksThatAreNeverStoredStayWithinTheBound() throws IOException {
+        // Without stored blocks random bytes are coded at their largest
+        byte[] data = TestData.randomBytes(3 * BLOCK_SIZE, 3);
+        for (HuffmanBlockOptions layout : layouts()) {
+            HuffmanBlockOptions neverStore = new HuffmanBlockOptions(layout.maxCodeLength, layout.interleaved,
+                    layout.lzLevel, layout.lzWindowBits, 0);
+            HuffmanCodec codec = new HuffmanCodec(BLOCK_SIZE, neverStore, pool, HuffmanListener.NONE);
+            assertEquals(ByteBuffer.wrap(data), codec.decompress(codec.compress(ByteBuffer.wrap(data))));
+        }
+    }
+
+    @Test
+    void truncatedFramesFail() throws IOException {
+        byte[] compressed = compress(TestData.skewedBytes(3 * BLOCK_SIZE, 4));
+        for (int length : new int[] { 6, HEADER_SIZE + 2, HEADER_SIZE + 10, compressed.length / 2,
+                compressed.length - 1 }) {
+            byte[] truncated = Arrays.copyOf(compressed, length);
+            assertThrows(IOException.class, () -> decompress(truncated), "truncated to " + length);
+            assertThrows(IOException.class, () -> readAll(truncated), "truncated to " + length);
+        }
+    }
+
+    @Test
+    void oversizedCompressedLengthFails() throws IOException {
+        // A corrupt length must fail before the payload buffer is allocated
+        byte[] compressed = compress(TestData.skewedBytes(2 * BLOCK_SIZE, 5));
+        for (int compressedLength : new int[] { Integer.MAX_VALUE, 1 << 30, 4 * BLOCK_SIZE }) {
+            byte[] corrupt = compressed.clone();
+            ByteBuffer.wrap(corrupt).putInt(HEADER_SIZE + 4, compressedLength);
+            assertThrows(IOException.class, () -> decompress(corrupt), "length " + compressedLength);
+            assertThrows(IOException.class, () -> readAll(corrupt), "length " + compressedLength);
+        }
+    }
+
+    @Test
+    void corruptHeadersFail() throws IOException {
+        byte[] compressed = compress(TestData.skewedBytes(BLOCK_SIZE, 6));
+        byte[] badAlphabet = compressed.clone();
+        ByteBuffer.wrap(badAlphabet).putInt(4, 1000);
+        assertThrows(IOException.class, () -> decompress(badAlphabet));
+        byte[] badBlockSize = compressed.clone();
+        ByteBuffer.wrap(badBlockSize).putInt(8, 0);
+        assertThrows(IOException.class, () -> decompress(badBlockSize));
+        byte[] rawLongerThanBlock = compressed.clone();
+        ByteBuffer.wrap(rawLongerThanBlock).putInt(HEADER_SIZE, BLOCK_SIZE + 1);
+        assertThrows(IOException.class, () -> decompress(rawLongerThanBlock));
+    }
+
+    // The plain, interleaved and LZ77 block layouts
+    private static HuffmanBlockOptions[] layouts() {
+        return new HuffmanBlockOptions[] {
+                HuffmanBlockOptions.DEFAULT,
+                new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, true),
+                new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, false,
+                        HuffmanBlockOptions.DEFAULT_LZ_LEVEL, HuffmanBlockOptions.DEFAULT_LZ_WINDOW_BITS,
+                        HuffmanBlockOptions.DEFAULT_MIN_SAVING_PERCENT) };
+    }
+
+    private byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        new HuffmanCodec(BLOCK_SIZE, pool).compress(new ByteArrayInputStream(data), compressed);
+        return compressed.toByteArray();
+    }
+
+    private void decompress(byte[] compressed) throws IOException {
+        new HuffmanCodec(BLOCK_SIZE, pool).decompress(new ByteArrayInputStream(compressed),
+                new ByteArrayOutputStream());
+    }
+
+    private static void readAll(byte[] compressed) throws IOException {
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compressed))) {
+            in.readAllBytes();
+        }
+    }
+}
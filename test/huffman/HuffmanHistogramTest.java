@@ -0,0 +1,90 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+// Frequency counting, on one thread and over slices on the pool
+class HuffmanHistogramTest {
+
+    @Test
+    void subTablesMatchPlainCount() {
+        char[] data = TestData.skewedText(100_000, 1).toCharArray();
+        data[10] = '\u4E00'; // Above the sub-tables' range
+        int[] expected = new int[HuffmanBlockCodec.MAX_CHAR];
+        for (char c : data) {
+            expected[c]++;
+        }
+        int[] table = new int[HuffmanBlockCodec.MAX_CHAR];
+        HuffmanHistogram.count(data, 0, data.length, table, HuffmanHistogram.newSubTables());
+        assertArrayEquals(expected, table);
+    }
+
+    @Test
+    void slicesMatchPlainCount() throws IOException {
+        char[] data = TestData.skewedText(3 * HuffmanHistogram.SLICE_SIZE + 12_345, 2).toCharArray();
+        long[] expected = new long[HuffmanBlockCodec.MAX_CHAR];
+        for (char c : data) {
+            expected[c]++;
+        }
+        HuffmanHistogram histogram = new HuffmanHistogram(HuffmanBlockCodec.MAX_CHAR, ForkJoinPool.commonPool(), 4);
+        for (int offset = 0; offset < data.length; offset += 100_000) {
+            int length = Math.min(100_000, data.length - offset);
+            histogram.add(Arrays.copyOfRange(data, offset, offset + length), length);
+        }
+        assertArrayEquals(expected, histogram.finish());
+    }
+
+    @Test
+    void countsPastTheIntRange() throws IOException {
+        // With one slice buffer every slice lands in the same partial table,
+        // which has to be moved into the 64-bit totals before it overflows
+        char[] chunk = new char[HuffmanHistogram.SLICE_SIZE];
+        Arrays.fill(chunk, 'a');
+        chunk[0] = 'b';
+        long slices = (1L << 31) / chunk.length + 3;
+        HuffmanHistogram histogram = new HuffmanHistogram(HuffmanBlockCodec.BYTE_ALPHABET, ForkJoinPool.commonPool(),
+                1);
+        for (long i = 0; i < slices; i++) {
+            histogram.add(chunk, chunk.length);
+        }
+        long[] table = histogram.finish();
+        assertEquals(slices * (chunk.length - 1), table['a']);
+        assertEquals(slices, table['b']);
+    }
+
+    @Test
+    void partialTablesMergeIntoLongTotals() throws IOException {
+        // Two partial tables, each below the point where it is moved into
+        // the totals, whose sum is past the int range
+        char[] chunk = new char[HuffmanHistogram.SLICE_SIZE];
+        Arrays.fill(chunk, 'x');
+        long slices = 2 * ((1L << 30) / chunk.length + 50);
+        HuffmanHistogram histogram = new HuffmanHistogram(HuffmanBlockCodec.BYTE_ALPHABET, ForkJoinPool.commonPool(),
+                2);
+        for (long i = 0; i < slices; i++) {
+            histogram.add(chunk, chunk.length);
+        }
+        histogram.add(chunk, 10); // A last, partly filled slice
+        long[] table = histogram.finish();
+        assertEquals(slices * chunk.length + 10, table['x']);
+        assertEquals(0, table['y']);
+    }
+
+    @Test
+    void fullSliceOfOneSymbolReachesTheIntLimit() {
+        // A partial table is moved once it could not take another slice, so
+        // one slice may bring a count up to Integer.MAX_VALUE but not past it
+        char[] slice = new char[HuffmanHistogram.SLICE_SIZE];
+        Arrays.fill(slice, 'a');
+        int[] table = new int[HuffmanBlockCodec.BYTE_ALPHABET];
+        table['a'] = Integer.MAX_VALUE - HuffmanHistogram.SLICE_SIZE;
+        HuffmanHistogram.count(slice, 0, slice.length, table);
+        assertEquals(Integer.MAX_VALUE, table['a']);
+    }
+}
@@ -0,0 +1,60 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+// Round trips of blocks split into interleaved bitstreams
+class HuffmanInterleavedTest {
+
+    private static final HuffmanBlockOptions INTERLEAVED = new HuffmanBlockOptions(
+            HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, true, 0, HuffmanBlockOptions.DEFAULT_LZ_WINDOW_BITS, 0);
+
+    @Test
+    void blocksOfEveryLengthAroundTheSegments() throws IOException {
+        // Lengths that leave the last streams short or empty
+        char[] data = TestData.widen(TestData.skewedBytes(1000, 1));
+        for (int length = 1; length <= 40; length++) {
+            assertBlockRoundTrip(Arrays.copyOf(data, length), HuffmanBlockCodec.BYTE_ALPHABET);
+        }
+        assertBlockRoundTrip(Arrays.copyOf(data, 999), HuffmanBlockCodec.BYTE_ALPHABET);
+    }
+
+    @Test
+    void fullTextBlock() throws IOException {
+        char[] data = TestData.skewedText(HuffmanBlockCodec.DEFAULT_BLOCK_SIZE + 3, 2).toCharArray();
+        assertBlockRoundTrip(data, HuffmanBlockCodec.MAX_CHAR);
+    }
+
+    @Test
+    void singleSymbolBlock() throws IOException {
+        char[] data = new char[10_000];
+        Arrays.fill(data, 'q');
+        assertBlockRoundTrip(data, HuffmanBlockCodec.BYTE_ALPHABET);
+    }
+
+    @Test
+    void codecWritesInterleavedMagic() throws IOException {
+        byte[] data = TestData.skewedBytes(3 * 65536 + 17, 3);
+        HuffmanCodec codec = new HuffmanCodec(65536, new HuffmanBlockOptions(12, true), ForkJoinPool.commonPool(),
+                HuffmanListener.NONE);
+        ByteBuffer compressed = codec.compress(ByteBuffer.wrap(data));
+        assertEquals(HuffmanBlockCodec.FRAMED_INTERLEAVED_MAGIC, compressed.getInt(0));
+        ByteBuffer restored = codec.decompress(compressed);
+        assertEquals(ByteBuffer.wrap(data), restored);
+    }
+
+    private static void assertBlockRoundTrip(char[] data, int alphabetSize) throws IOException {
+        byte[] payload = HuffmanBlockCodec.encodeBlock(data, data.length, alphabetSize, INTERLEAVED,
+                HuffmanListener.NONE);
+        char[] decoded = HuffmanBlockCodec.decodeBlock(payload, data.length, alphabetSize,
+                HuffmanBlockCodec.LAYOUT_INTERLEAVED, HuffmanListener.NONE);
+        assertArrayEquals(data, decoded, "length " + data.length);
+    }
+}
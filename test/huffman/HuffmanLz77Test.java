@@ -0,0 +1,125 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+// Round trips through the LZ77 stage at every level and a range of windows
+class HuffmanLz77Test {
+
+    @Test
+    void everyLevel() throws IOException {
+        char[] data = TestData.widen(logLines(200_000));
+        for (int level = 1; level <= HuffmanLz77.MAX_LEVEL; level++) {
+            assertBlockRoundTrip(data, options(level, HuffmanLz77.DEFAULT_WINDOW_BITS));
+        }
+    }
+
+    @Test
+    void smallestAndLargestWindow() throws IOException {
+        char[] data = TestData.widen(logLines(100_000));
+        assertBlockRoundTrip(data, options(HuffmanLz77.DEFAULT_LEVEL, HuffmanLz77.MIN_WINDOW_BITS));
+        assertBlockRoundTrip(data, options(HuffmanLz77.DEFAULT_LEVEL, HuffmanLz77.MAX_WINDOW_BITS));
+    }
+
+    @Test
+    void longRunsAndOverlappingMatches() throws IOException {
+        // A run is a match whose distance is shorter than its length
+        char[] data = new char[70_000];
+        Arrays.fill(data, 0, 30_000, 'a');
+        for (int i = 30_000; i < data.length; i++) {
+            data[i] = (char) ("abc".charAt(i % 3));
+        }
+        assertBlockRoundTrip(data, options(9, HuffmanLz77.DEFAULT_WINDOW_BITS));
+    }
+
+    @Test
+    void shortAndIncompressibleBlocks() throws IOException {
+        HuffmanBlockOptions options = options(HuffmanLz77.DEFAULT_LEVEL, HuffmanLz77.DEFAULT_WINDOW_BITS);
+        assertBlockRoundTrip(new char[] { 'x' }, options);
+        assertBlockRoundTrip(new char[] { 'x', 'y' }, options);
+        assertBlockRoundTrip(TestData.widen(TestData.randomBytes(50_000, 1)), options);
+    }
+
+    @Test
+    void shrinksRepetitiveInput() throws IOException {
+        byte[] data = logLines(1 << 20);
+        HuffmanCodec plain = new HuffmanCodec();
+        HuffmanCodec lz = new HuffmanCodec(HuffmanCodec.DEFAULT_BLOCK_SIZE,
+                options(HuffmanLz77.DEFAULT_LEVEL, HuffmanLz77.DEFAULT_WINDOW_BITS), ForkJoinPool.commonPool(),
+                HuffmanListener.NONE);
+        ByteBuffer compressed = lz.compress(ByteBuffer.wrap(data));
+        assertEquals(HuffmanBlockCodec.FRAMED_LZ77_MAGIC, compressed.getInt(0));
+        assertTrue(compressed.remaining() < plain.compress(ByteBuffer.wrap(data)).remaining() / 2);
+        assertEquals(ByteBuffer.wrap(data), lz.decompress(compressed));
+    }
+
+    @Test
+    void outputStreamUsesTheCodecOptions() throws IOException {
+        byte[] data = logLines(300_000);
+        HuffmanCodec lz = new HuffmanCodec(65536, options(3, 12), ForkJoinPool.commonPool(), HuffmanListener.NONE);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = lz.newOutputStream(compressed)) {
+            out.write(data, 0, 1000);
+            out.write(data, 1000, data.length - 1000);
+        }
+        byte[] bytes = compressed.toByteArray();
+        assertEquals(HuffmanBlockCodec.FRAMED_LZ77_MAGIC, ByteBuffer.wrap(bytes).getInt());
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(bytes))) {
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void textFormatsIgnoreTheStage() {
+        HuffmanBlockOptions options = options(HuffmanLz77.DEFAULT_LEVEL, HuffmanLz77.DEFAULT_WINDOW_BITS);
+        assertEquals(HuffmanBlockCodec.LAYOUT_LZ77, options.layout(HuffmanBlockCodec.BYTE_ALPHABET));
+        assertEquals(HuffmanBlockCodec.LAYOUT_SINGLE, options.layout(HuffmanBlockCodec.MAX_CHAR));
+    }
+
+    @Test
+    void rejectsInterleavingAndBadSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new HuffmanBlockOptions(15, true, 1, 16, 1));
+        assertThrows(IllegalArgumentException.class, () -> new HuffmanBlockOptions(15, false, 10, 16, 1));
+        assertThrows(IllegalArgumentException.class, () -> new HuffmanBlockOptions(15, false, 1, 9, 1));
+        assertEquals(HuffmanBlockCodec.LAYOUT_SINGLE,
+                new HuffmanBlockOptions(15, false, 0, 16, 1).layout(HuffmanBlockCodec.BYTE_ALPHABET));
+    }
+
+    private static HuffmanBlockOptions options(int level, int windowBits) {
+        return new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, false, level, windowBits,
+                HuffmanBlockOptions.DEFAULT_MIN_SAVING_PERCENT);
+    }
+
+    private static void assertBlockRoundTrip(char[] data, HuffmanBlockOptions options) throws IOException {
+        byte[] payload = HuffmanBlockCodec.encodeBlock(data, data.length, HuffmanBlockCodec.BYTE_ALPHABET, options,
+                HuffmanListener.NONE);
+        char[] decoded = HuffmanBlockCodec.decodeBlock(payload, data.length, HuffmanBlockCodec.BYTE_ALPHABET,
+                HuffmanBlockCodec.LAYOUT_LZ77, HuffmanListener.NONE);
+        assertArrayEquals(data, decoded, "level " + options.lzLevel + ", window bits " + options.lzWindowBits);
+    }
+
+    // Log-like lines that repeat a few templates with changing numbers
+    private static byte[] logLines(int length) {
+        String[] templates = { "GET /index.html 200 ", "POST /api/orders 201 ", "GET /static/app.js 304 " };
+        StringBuilder text = new StringBuilder(length + 64);
+        for (int i = 0; text.length() < length; i++) {
+            text.append("2026-10-17 12:").append(i % 60).append(' ').append(templates[i % templates.length])
+                    .append(i * 7919 % 10_000).append('\n');
+        }
+        return Arrays.copyOf(text.toString().getBytes(StandardCharsets.US_ASCII), length);
+    }
+}
@@ -0,0 +1,122 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// File round trips with the map window shrunk to a few blocks, so inputs
+// span several windows
+class HuffmanMappedFileTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @TempDir
+    Path dir;
+
+    @AfterEach
+    void restoreMapWindow() {
+        HuffmanBlockCodec.mapWindow = HuffmanBlockCodec.MAP_WINDOW;
+    }
+
+    @Test
+    void binaryFileAcrossWindows() throws IOException {
+        HuffmanBlockCodec.mapWindow = 4 * BLOCK_SIZE;
+        assertFileRoundTrip(TestData.skewedBytes(10 * 4 * BLOCK_SIZE + 1234, 1), HuffmanCodec.Format.BINARY_BLOCKS);
+    }
+
+    @Test
+    void windowThatIsNotAWholeNumberOfBlocks() throws IOException {
+        // Rounded down to three blocks; mapped as given, the fourth block of
+        // every window would straddle it and the next one
+        HuffmanBlockCodec.mapWindow = 3 * BLOCK_SIZE + BLOCK_SIZE / 2;
+        assertFileRoundTrip(TestData.skewedBytes(20 * BLOCK_SIZE + 99, 2), HuffmanCodec.Format.BINARY_BLOCKS);
+    }
+
+    @Test
+    void windowSmallerThanABlock() throws IOException {
+        HuffmanBlockCodec.mapWindow = BLOCK_SIZE / 3;
+        assertFileRoundTrip(TestData.skewedBytes(5 * BLOCK_SIZE + 1, 3), HuffmanCodec.Format.BINARY_BLOCKS);
+    }
+
+    @Test
+    void textFileOverManyBlocks() throws IOException {
+        // Text goes through a Reader and is never mapped, whatever the window
+        byte[] text = TestData.skewedText(30 * BLOCK_SIZE + 7, 4).getBytes(Charset.defaultCharset());
+        assertFileRoundTrip(text, HuffmanCodec.Format.TEXT_BLOCKS);
+    }
+
+    @Test
+    void mappedAndStreamedInputGiveTheSameFile() throws IOException {
+        HuffmanBlockCodec.mapWindow = 3 * BLOCK_SIZE;
+        byte[] data = TestData.skewedBytes(17 * BLOCK_SIZE + 500, 5);
+        Path input = dir.resolve("input.bin");
+        Files.write(input, data);
+        Path mapped = dir.resolve("mapped.huf");
+        codec().compressFile(input, mapped, HuffmanCodec.Format.BINARY_BLOCKS);
+
+        // A buffered stream is not a FileChannel, so its blocks are read one by one
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        try (InputStream in = new BufferedInputStream(new FileInputStream(input.toFile()))) {
+            codec().compress(in, streamed);
+        }
+        assertArrayEquals(streamed.toByteArray(), Files.readAllBytes(mapped));
+    }
+
+    @Test
+    void mappingStartsAtTheChannelPosition() throws IOException {
+        // Windows then start part way into a block of the file
+        HuffmanBlockCodec.mapWindow = 2 * BLOCK_SIZE;
+        byte[] data = TestData.skewedBytes(9 * BLOCK_SIZE, 6);
+        Path input = dir.resolve("input.bin");
+        Files.write(input, data);
+        int skipped = BLOCK_SIZE + 1000;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            in.position(skipped);
+            HuffmanBlockCodec.compressFramed(in, Channels.newChannel(compressed), BLOCK_SIZE,
+                    HuffmanBlockOptions.DEFAULT, ForkJoinPool.commonPool(), HuffmanListener.NONE);
+        }
+        ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        codec().decompress(new ByteArrayInputStream(compressed.toByteArray()), restored);
+        assertArrayEquals(Arrays.copyOfRange(data, skipped, data.length), restored.toByteArray());
+    }
+
+    @Test
+    void emptyFileFallsBackToStreaming() throws IOException {
+        assertFileRoundTrip(new byte[0], HuffmanCodec.Format.BINARY_BLOCKS);
+        assertFileRoundTrip(new byte[0], HuffmanCodec.Format.TEXT_BLOCKS);
+    }
+
+    private void assertFileRoundTrip(byte[] data, HuffmanCodec.Format format) throws IOException {
+        Path input = dir.resolve("input");
+        Path compressed = dir.resolve("input.huf");
+        Path restored = dir.resolve("restored");
+        Files.write(input, data);
+        codec().compressFile(input, compressed, format);
+        assertEquals(format, HuffmanCodec.detectFormat(compressed));
+        codec().decompressFile(compressed, restored);
+        assertArrayEquals(data, Files.readAllBytes(restored));
+    }
+
+    private static HuffmanCodec codec() {
+        return new HuffmanCodec(BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+}
@@ -0,0 +1,196 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// Round trips of the single-stream text format, decoded both by the
+// table-driven decoder and by the reference tree walk, and the progress and
+// cancellation of its two reads
+class HuffmanSingleStreamTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void tableDecoderMatchesTreeWalk() throws IOException {
+        assertRoundTrip(TestData.skewedText(200_000, 1), CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    @Test
+    void tableDecoderMatchesTreeWalkWithShortCodes() throws IOException {
+        // A 9-bit limit forces limitCodeLengths to reshape the tree
+        assertRoundTrip(TestData.skewedText(200_000, 2), 9);
+    }
+
+    @Test
+    void codesLongerThanOneLookup() throws IOException {
+        // Frequencies that double from symbol to symbol give codes past the
+        // decode table's primary bits
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 18; i++) {
+            for (int j = 0; j < 1 << i; j++) {
+                text.append((char) ('a' + i));
+            }
+        }
+        assertRoundTrip(text.toString(), CanonicalHuffman.MAX_CODE_LENGTH);
+    }
+
+    @Test
+    void singleSymbol() throws IOException {
+        assertRoundTrip("zzzzzzzzzzzzzzzz", CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH);
+    }
+
+    @Test
+    void formatIsDetected() throws IOException {
+        Path compressed = compress(TestData.skewedText(1000, 3), CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH);
+        assertEquals(HuffmanCodec.Format.TEXT_SINGLE_STREAM, HuffmanCodec.detectFormat(compressed));
+    }
+
+    @Test
+    void characterCountIsAVarLong() throws IOException {
+        String text = TestData.skewedText(300, 4);
+        Path compressed = compress(text, CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(compressed)));
+        assertEquals(HuffmanSingleStream.SINGLE_STREAM_MAGIC, dis.readInt());
+        assertEquals(300, CanonicalHuffman.readVarLong(dis));
+    }
+
+    @Test
+    void rejectsNegativeCharacterCount() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(bytes);
+        dos.writeInt(HuffmanSingleStream.SINGLE_STREAM_MAGIC);
+        CanonicalHuffman.writeVarLong(dos, -1);
+        Path corrupt = dir.resolve("corrupt.bin");
+        Files.write(corrupt, bytes.toByteArray());
+        assertThrows(IOException.class,
+                () -> HuffmanSingleStream.decompress(corrupt, dir.resolve("out.txt"), HuffmanListener.NONE));
+    }
+
+    @Test
+    void metricsCountBothReadsOfALargeFile() throws IOException {
+        Path input = largeFile();
+        long size = Files.size(input);
+        Path compressed = dir.resolve("large.bin");
+        HuffmanMetrics metrics = new HuffmanMetrics();
+        metrics.start(size);
+        HuffmanSingleStream.compress(input, compressed, CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH,
+                ForkJoinPool.commonPool(), metrics);
+        metrics.finish();
+        assertEquals(2 * size, metrics.getTotalBytes());
+        assertEquals(2 * size, metrics.getBytesProcessed());
+        assertEquals(1.0, metrics.getProgress());
+        assertTrue(metrics.getPhaseMillis(HuffmanListener.Phase.FREQUENCY_COUNT) > 0);
+        assertTrue(metrics.getPhaseMillis(HuffmanListener.Phase.ENCODE) > 0);
+        assertEquals(0, metrics.getPhaseMillis(HuffmanListener.Phase.DECODE));
+        assertTrue(metrics.getLengthLimitCostPercent() >= 0);
+        assertTrue(metrics.getPeakHeapBytes() > 0);
+
+        Path restored = dir.resolve("large.txt");
+        metrics.start(Files.size(compressed));
+        HuffmanSingleStream.decompress(compressed, restored, metrics);
+        metrics.finish();
+        assertEquals(Files.size(compressed), metrics.getBytesProcessed());
+        assertEquals(1.0, metrics.getProgress());
+        assertTrue(metrics.getPhaseMillis(HuffmanListener.Phase.DECODE) > 0);
+        assertEquals(0, metrics.getPhaseMillis(HuffmanListener.Phase.ENCODE));
+        assertEquals(-1, Files.mismatch(input, restored));
+    }
+
+    @Test
+    void smallFileIsReadOnce() throws IOException {
+        Path input = dir.resolve("input.txt");
+        Files.writeString(input, TestData.skewedText(100_000, 6), Charset.defaultCharset());
+        HuffmanMetrics metrics = new HuffmanMetrics();
+        metrics.start(Files.size(input));
+        HuffmanSingleStream.compress(input, dir.resolve("input.bin"), CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH,
+                ForkJoinPool.commonPool(), metrics);
+        assertEquals(Files.size(input), metrics.getTotalBytes());
+        assertEquals(Files.size(input), metrics.getBytesProcessed());
+    }
+
+    @Test
+    void cancelDuringTheSecondReadLeavesNoOutput() throws IOException {
+        Path input = largeFile();
+        long size = Files.size(input);
+        Path compressed = dir.resolve("large.bin");
+        // Interrupts the compressing thread once the second read is under way
+        HuffmanListener interruptInSecondRead = new HuffmanListener() {
+            private final AtomicLong read = new AtomicLong();
+
+            @Override
+            public void bytesProcessed(long count) {
+                if (read.addAndGet(count) > size + size / 4) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Exception e = assertThrows(Exception.class, () -> HuffmanSingleStream.compress(input, compressed,
+                CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH, ForkJoinPool.commonPool(), interruptInSecondRead));
+        Thread.interrupted(); // Clear the flag before the next test
+        assertTrue(e instanceof InterruptedIOException || e instanceof CancellationException, e.toString());
+        assertFalse(Files.exists(compressed));
+    }
+
+    @Test
+    void cancelDuringTheFirstReadLeavesNoOutput() throws IOException {
+        Path input = largeFile();
+        Path compressed = dir.resolve("large.bin");
+        Files.write(compressed, new byte[] { 1, 2, 3 }); // Left from an earlier run
+        HuffmanListener interruptAtOnce = new HuffmanListener() {
+            @Override
+            public void bytesProcessed(long count) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        Exception e = assertThrows(Exception.class, () -> HuffmanSingleStream.compress(input, compressed,
+                CanonicalHuffman.DEFAULT_MAX_CODE_LENGTH, ForkJoinPool.commonPool(), interruptAtOnce));
+        Thread.interrupted();
+        assertTrue(e instanceof InterruptedIOException || e instanceof CancellationException, e.toString());
+        assertFalse(Files.exists(compressed));
+    }
+
+    // A text file too large to be kept in memory between the two reads
+    private Path largeFile() throws IOException {
+        Path input = dir.resolve("large.txt");
+        Files.writeString(input, TestData.skewedText((1 << 24) + 100_000, 7), Charset.defaultCharset());
+        return input;
+    }
+
+    private void assertRoundTrip(String text, int maxCodeLength) throws IOException {
+        Path compressed = compress(text, maxCodeLength);
+        Path table = dir.resolve("table.txt");
+        Path treeWalk = dir.resolve("tree.txt");
+        HuffmanSingleStream.decompress(compressed, table, HuffmanListener.NONE);
+        HuffmanSingleStream.decompressTreeWalk(compressed, treeWalk);
+        assertEquals(text, Files.readString(treeWalk, Charset.defaultCharset()));
+        assertEquals(text, Files.readString(table, Charset.defaultCharset()));
+    }
+
+    private Path compress(String text, int maxCodeLength) throws IOException {
+        Path input = dir.resolve("input.txt");
+        Path compressed = dir.resolve("input.bin");
+        Files.writeString(input, text, Charset.defaultCharset());
+        HuffmanSingleStream.compress(input, compressed, maxCodeLength, ForkJoinPool.commonPool(),
+                HuffmanListener.NONE);
+        return compressed;
+    }
+}
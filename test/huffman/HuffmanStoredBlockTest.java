@@ -0,0 +1,93 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+// Blocks that coding would not shrink enough are stored as they are
+class HuffmanStoredBlockTest {
+
+    @Test
+    void randomBytesAreStored() throws IOException {
+        char[] data = TestData.widen(TestData.randomBytes(100_000, 1));
+        byte[] payload = encode(data, HuffmanBlockCodec.BYTE_ALPHABET, HuffmanBlockOptions.DEFAULT);
+        assertTrue(HuffmanBlockCodec.isStored(payload));
+        assertEquals(HuffmanBlockCodec.storedSize(data.length, HuffmanBlockCodec.BYTE_ALPHABET), payload.length);
+        assertArrayEquals(data, decode(payload, data.length, HuffmanBlockCodec.BYTE_ALPHABET));
+    }
+
+    @Test
+    void skewedBytesAreCoded() throws IOException {
+        char[] data = TestData.widen(TestData.skewedBytes(100_000, 2));
+        byte[] payload = encode(data, HuffmanBlockCodec.BYTE_ALPHABET, HuffmanBlockOptions.DEFAULT);
+        assertFalse(HuffmanBlockCodec.isStored(payload));
+        assertArrayEquals(data, decode(payload, data.length, HuffmanBlockCodec.BYTE_ALPHABET));
+    }
+
+    @Test
+    void textBlocksAreStoredAsCharacters() throws IOException {
+        // Every character once: nothing to gain from coding
+        char[] data = new char[5000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (char) (0x4E00 + i);
+        }
+        byte[] payload = encode(data, HuffmanBlockCodec.MAX_CHAR, HuffmanBlockOptions.DEFAULT);
+        assertTrue(HuffmanBlockCodec.isStored(payload));
+        assertArrayEquals(data, decode(payload, data.length, HuffmanBlockCodec.MAX_CHAR));
+    }
+
+    @Test
+    void zeroMinimumSavingNeverStores() throws IOException {
+        HuffmanBlockOptions neverStore = new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, false,
+                0, HuffmanBlockOptions.DEFAULT_LZ_WINDOW_BITS, 0);
+        char[] data = TestData.widen(TestData.randomBytes(100_000, 3));
+        byte[] payload = encode(data, HuffmanBlockCodec.BYTE_ALPHABET, neverStore);
+        assertFalse(HuffmanBlockCodec.isStored(payload));
+        assertArrayEquals(data, decode(payload, data.length, HuffmanBlockCodec.BYTE_ALPHABET));
+    }
+
+    @Test
+    void highMinimumSavingStoresEverything() throws IOException {
+        HuffmanBlockOptions alwaysStore = new HuffmanBlockOptions(HuffmanBlockOptions.DEFAULT_MAX_CODE_LENGTH, false,
+                0, HuffmanBlockOptions.DEFAULT_LZ_WINDOW_BITS, 100);
+        char[] data = TestData.widen(TestData.skewedBytes(100_000, 4));
+        byte[] payload = encode(data, HuffmanBlockCodec.BYTE_ALPHABET, alwaysStore);
+        assertTrue(HuffmanBlockCodec.isStored(payload));
+        assertArrayEquals(data, decode(payload, data.length, HuffmanBlockCodec.BYTE_ALPHABET));
+    }
+
+    @Test
+    void codecMixesStoredAndCodedBlocks() throws IOException {
+        byte[] random = TestData.randomBytes(65536, 5);
+        byte[] skewed = TestData.skewedBytes(65536, 6);
+        ByteBuffer data = ByteBuffer.allocate(4 * 65536 + 100);
+        data.put(random).put(skewed).put(random).put(skewed).put(random, 0, 100).flip();
+        HuffmanCodec codec = new HuffmanCodec(65536, ForkJoinPool.commonPool());
+        ByteBuffer compressed = codec.compress(data);
+        assertTrue(compressed.remaining() < data.remaining());
+        assertEquals(data, codec.decompress(compressed));
+    }
+
+    @Test
+    void rejectsMinimumSavingOutOfRange() {
+        assertThrows(IllegalArgumentException.class, () -> new HuffmanBlockOptions(15, false, 0, 16, -1));
+        assertThrows(IllegalArgumentException.class, () -> new HuffmanBlockOptions(15, false, 0, 16, 101));
+        assertThrows(IllegalArgumentException.class, () -> new HuffmanBlockOptions(15, false, 0, 16, Double.NaN));
+    }
+
+    private static byte[] encode(char[] data, int alphabetSize, HuffmanBlockOptions options) throws IOException {
+        return HuffmanBlockCodec.encodeBlock(data, data.length, alphabetSize, options, HuffmanListener.NONE);
+    }
+
+    private static char[] decode(byte[] payload, int length, int alphabetSize) throws IOException {
+        return HuffmanBlockCodec.decodeBlock(payload, length, alphabetSize);
+    }
+}
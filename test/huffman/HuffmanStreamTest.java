@@ -0,0 +1,73 @@
+package huffman;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+// HuffmanOutputStream and HuffmanInputStream over several blocks
+class HuffmanStreamTest {
+
+    private static final int BLOCK_SIZE = 4096;
+
+    @Test
+    void writeAndReadInPieces() throws IOException {
+        byte[] data = TestData.skewedBytes(5 * BLOCK_SIZE + 123, 1);
+        byte[] compressed = compress(data);
+        ByteArrayOutputStream restored = new ByteArrayOutputStream();
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[777];
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+                restored.write(buffer, 0, n);
+            }
+        }
+        assertArrayEquals(data, restored.toByteArray());
+    }
+
+    @Test
+    void readSingleBytes() throws IOException {
+        byte[] data = TestData.skewedBytes(2 * BLOCK_SIZE + 5, 2);
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compress(data)))) {
+            for (byte b : data) {
+                assertEquals(b & 0xFF, in.read());
+            }
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void skipAcrossBlocks() throws IOException {
+        byte[] data = TestData.skewedBytes(4 * BLOCK_SIZE, 3);
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compress(data)))) {
+            assertEquals(0, in.skip(0));
+            assertEquals(0, in.skip(-5));
+            assertEquals(BLOCK_SIZE + 10, in.skip(BLOCK_SIZE + 10));
+            assertArrayEquals(Arrays.copyOfRange(data, BLOCK_SIZE + 10, BLOCK_SIZE + 20), in.readNBytes(10));
+            assertEquals(data.length - BLOCK_SIZE - 20, in.skip(Long.MAX_VALUE));
+            assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    void emptyStream() throws IOException {
+        try (InputStream in = new HuffmanInputStream(new ByteArrayInputStream(compress(new byte[0])))) {
+            assertEquals(-1, in.read());
+        }
+    }
+
+    private static byte[] compress(byte[] data) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new HuffmanOutputStream(compressed, BLOCK_SIZE)) {
+            out.write(data);
+        }
+        return compressed.toByteArray();
+    }
+}
@@ -0,0 +1,48 @@
+package huffman;
+
+import java.util.Random;
+
+// Generated inputs shared by the tests, reproducible from their seed
+final class TestData {
+
+    private TestData() {
+    }
+
+    // Printable ASCII and line breaks, with low characters far more frequent
+    static String skewedText(int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(95);
+            text.append(i % 61 == 60 ? '\n' : (char) (' ' + r * r / 95));
+        }
+        return text.toString();
+    }
+
+    // Bytes of all 256 values, with low values far more frequent
+    static byte[] skewedBytes(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            int r = random.nextInt(256);
+            data[i] = (byte) (r * r / 256);
+        }
+        return data;
+    }
+
+    // Uniformly random bytes, which Huffman coding cannot shrink
+    static byte[] randomBytes(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    // Returns the symbols of a byte array widened to byte mode characters
+    static char[] widen(byte[] data) {
+        char[] symbols = new char[data.length];
+        for (int i = 0; i < data.length; i++) {
+            symbols[i] = (char) (data[i] & 0xFF);
+        }
+        return symbols;
+    }
+}